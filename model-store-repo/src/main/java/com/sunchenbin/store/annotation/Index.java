@@ -0,0 +1,37 @@
+package com.sunchenbin.store.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 普通索引，标记在有@Column的字段上时为该字段的单列索引，
+ * 多个字段的组合索引配置在@Table的indexes中，通过columns指定字段
+ */
+// 该注解用于字段声明
+@Target(ElementType.FIELD)
+// VM将在运行期也保留注释，因此可以通过反射机制读取注解的信息
+@Retention(RetentionPolicy.RUNTIME)
+// 将此注解包含在javadoc中
+@Documented
+// 允许子类继承父类中的注解
+@Inherited
+public @interface Index{
+
+	/**
+	 * 索引名，默认是idx_加上字段名，多个字段时用_连接
+	 *
+	 * @return
+	 */
+	public String name() default "";
+
+	/**
+	 * 索引的字段名，按顺序组成组合索引，只在@Table的indexes中使用，标记在字段上时忽略
+	 *
+	 * @return
+	 */
+	public String[] columns() default {};
+}
@@ -29,4 +29,43 @@ public @interface Table {
 	 * @return
 	 */
 	public String name();
+
+	/**
+	 * 是否开启按主键查询的二级缓存，默认false
+	 * 只有通过BaseMysqlCRUDManager的写操作会使缓存失效，其他途径修改的数据要等ttl过期后才能查到
+	 * 在事务中查询的结果不放入缓存，避免缓存还没有提交的数据
+	 * @return
+	 */
+	public boolean cache() default false;
+
+	/**
+	 * 缓存的有效时间，单位秒，默认300秒，小于等于0时不过期
+	 * @return
+	 */
+	public int ttl() default 300;
+
+	/**
+	 * 最多缓存的数据条数，超过时淘汰最久没有使用的数据，默认1000条
+	 * @return
+	 */
+	public int maxSize() default 1000;
+
+	/**
+	 * 是否跟踪对象的修改，默认false
+	 * 开启后通过BaseMysqlCRUDManager查询或保存的对象会记录字段值的快照，更新时只更新和快照不同的字段，没有修改时不执行update
+	 * @return
+	 */
+	public boolean trackChanges() default false;
+
+	/**
+	 * 多个字段的组合索引，例如indexes = @Index(columns = { "name", "create_time" })
+	 * @return
+	 */
+	public Index[] indexes() default {};
+
+	/**
+	 * 多个字段的组合唯一索引，例如uniques = @Unique(columns = { "name", "number" })
+	 * @return
+	 */
+	public Unique[] uniques() default {};
 }
@@ -0,0 +1,155 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一张表需要做的全部结构和索引变更，用于合并成一条alter table语句执行
+ */
+public class AlterTableParam{
+
+	private String			tableName;
+
+	/**
+	 * 需要删除主键的字段
+	 */
+	private List<Object>	dropKeyFields	= new ArrayList<Object>();
+
+	/**
+	 * 需要增加的字段
+	 */
+	private List<Object>	addFields		= new ArrayList<Object>();
+
+	/**
+	 * 需要删除的字段名
+	 */
+	private List<Object>	removeFields	= new ArrayList<Object>();
+
+	/**
+	 * 需要修改类型等属性的字段
+	 */
+	private List<Object>	modifyFields	= new ArrayList<Object>();
+
+	/**
+	 * 需要删除的索引名
+	 */
+	private List<Object>	dropIndexes		= new ArrayList<Object>();
+
+	/**
+	 * 需要增加的索引
+	 */
+	private List<Object>	addIndexes		= new ArrayList<Object>();
+
+	/**
+	 * 指定的ALGORITHM，为null时不指定
+	 */
+	private String			algorithm;
+
+	/**
+	 * 指定的LOCK，为null时不指定
+	 */
+	private String			lock;
+
+	public AlterTableParam(String tableName){
+		this.tableName = tableName;
+	}
+
+	/**
+	 * 删除主键前需要先modify掉auto_increment等属性的字段，
+	 * 已经在modifyFields中的字段会在后面被modify，这里去掉避免同一条语句中重复modify同一个字段
+	 *
+	 * @return
+	 */
+	public List<Object> getDropKeyModifyFields(){
+		List<Object> list = new ArrayList<Object>();
+		for (Object obj : dropKeyFields){
+			if (!modifyFields.contains(obj)) {
+				list.add(obj);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 是否没有任何变更
+	 *
+	 * @return
+	 */
+	public boolean isEmpty(){
+		return dropKeyFields.isEmpty() && addFields.isEmpty() && removeFields.isEmpty() && modifyFields.isEmpty() && dropIndexes.isEmpty()
+				&& addIndexes.isEmpty();
+	}
+
+	public String getTableName(){
+		return tableName;
+	}
+
+	public void setTableName(String tableName){
+		this.tableName = tableName;
+	}
+
+	public String getAlgorithm(){
+		return algorithm;
+	}
+
+	public void setAlgorithm(String algorithm){
+		this.algorithm = algorithm;
+	}
+
+	public String getLock(){
+		return lock;
+	}
+
+	public void setLock(String lock){
+		this.lock = lock;
+	}
+
+	public List<Object> getDropKeyFields(){
+		return dropKeyFields;
+	}
+
+	public void setDropKeyFields(List<Object> dropKeyFields){
+		this.dropKeyFields = dropKeyFields;
+	}
+
+	public List<Object> getAddFields(){
+		return addFields;
+	}
+
+	public void setAddFields(List<Object> addFields){
+		this.addFields = addFields;
+	}
+
+	public List<Object> getRemoveFields(){
+		return removeFields;
+	}
+
+	public void setRemoveFields(List<Object> removeFields){
+		this.removeFields = removeFields;
+	}
+
+	public List<Object> getModifyFields(){
+		return modifyFields;
+	}
+
+	public void setModifyFields(List<Object> modifyFields){
+		this.modifyFields = modifyFields;
+	}
+
+	public List<Object> getDropIndexes(){
+		return dropIndexes;
+	}
+
+	public void setDropIndexes(List<Object> dropIndexes){
+		this.dropIndexes = dropIndexes;
+	}
+
+	public List<Object> getAddIndexes(){
+		return addIndexes;
+	}
+
+	public void setAddIndexes(List<Object> addIndexes){
+		this.addIndexes = addIndexes;
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量操作中同一张表、同一组字段的数据，合并成一条多行的sql执行
+ */
+public class BatchParam{
+
+	private String				tableName;
+
+	/**
+	 * 主键字段名，按主键更新和删除时使用
+	 */
+	private List<String>		keyColumns	= new ArrayList<String>();
+
+	/**
+	 * 本批次的字段名
+	 */
+	private List<String>		columns		= new ArrayList<String>();
+
+	/**
+	 * 本批次的数据，按加入的顺序
+	 */
+	private List<BatchRowParam>	rows		= new ArrayList<BatchRowParam>();
+
+	public BatchParam(String tableName, List<String> columns){
+		this.tableName = tableName;
+		this.columns = columns;
+	}
+
+	/**
+	 * insert遇到重复的主键或唯一索引时需要更新的字段，即本批次中不是主键的字段
+	 * 全部是主键字段时返回主键字段，更新成相同的值，保证语句合法
+	 *
+	 * @return
+	 */
+	public List<String> getUpdateColumns(){
+		List<String> list = new ArrayList<String>();
+		for (String column : columns){
+			if (!keyColumns.contains(column)) {
+				list.add(column);
+			}
+		}
+		return list.isEmpty() ? keyColumns : list;
+	}
+
+	public String getTableName(){
+		return tableName;
+	}
+
+	public void setTableName(String tableName){
+		this.tableName = tableName;
+	}
+
+	public List<String> getKeyColumns(){
+		return keyColumns;
+	}
+
+	public void setKeyColumns(List<String> keyColumns){
+		this.keyColumns = keyColumns;
+	}
+
+	public List<String> getColumns(){
+		return columns;
+	}
+
+	public void setColumns(List<String> columns){
+		this.columns = columns;
+	}
+
+	public List<BatchRowParam> getRows(){
+		return rows;
+	}
+
+	public void setRows(List<BatchRowParam> rows){
+		this.rows = rows;
+	}
+
+}
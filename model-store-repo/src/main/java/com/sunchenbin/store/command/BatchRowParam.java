@@ -0,0 +1,50 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量操作中的一行数据
+ */
+public class BatchRowParam{
+
+	/**
+	 * 与所在批次的字段顺序一致的字段值
+	 */
+	private List<Object>	values		= new ArrayList<Object>();
+
+	/**
+	 * 与所在批次的主键字段顺序一致的主键值，用于按主键更新和删除
+	 */
+	private List<Object>	keyValues	= new ArrayList<Object>();
+
+	/**
+	 * insert后数据库生成的自增主键，没有生成时为null
+	 */
+	private Long			generatedKey;
+
+	public List<Object> getValues(){
+		return values;
+	}
+
+	public void setValues(List<Object> values){
+		this.values = values;
+	}
+
+	public List<Object> getKeyValues(){
+		return keyValues;
+	}
+
+	public void setKeyValues(List<Object> keyValues){
+		this.keyValues = keyValues;
+	}
+
+	public Long getGeneratedKey(){
+		return generatedKey;
+	}
+
+	public void setGeneratedKey(Long generatedKey){
+		this.generatedKey = generatedKey;
+	}
+
+}
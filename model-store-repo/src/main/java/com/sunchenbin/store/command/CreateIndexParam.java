@@ -0,0 +1,54 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用于存放创建索引的信息，主键不在这里，由CreateTableParam的fieldIsKey表示
+ */
+public class CreateIndexParam{
+
+	/**
+	 * 没有指定名字时普通索引名的前缀
+	 */
+	public static final String	INDEX_PREFIX	= "idx_";
+
+	/**
+	 * 没有指定名字时唯一索引名的前缀
+	 */
+	public static final String	UNIQUE_PREFIX	= "uk_";
+
+	private String				indexName;
+
+	private boolean				indexIsUnique;
+
+	/**
+	 * 索引的字段名，按在索引中的顺序
+	 */
+	private List<String>		indexColumns	= new ArrayList<String>();
+
+	public String getIndexName(){
+		return indexName;
+	}
+
+	public void setIndexName(String indexName){
+		this.indexName = indexName;
+	}
+
+	public boolean isIndexIsUnique(){
+		return indexIsUnique;
+	}
+
+	public void setIndexIsUnique(boolean indexIsUnique){
+		this.indexIsUnique = indexIsUnique;
+	}
+
+	public List<String> getIndexColumns(){
+		return indexColumns;
+	}
+
+	public void setIndexColumns(List<String> indexColumns){
+		this.indexColumns = indexColumns;
+	}
+
+}
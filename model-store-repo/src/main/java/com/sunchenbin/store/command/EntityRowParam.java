@@ -0,0 +1,39 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sunchenbin.store.utils.EntityColumn;
+
+/**
+ * 单条数据增删改查时的一行数据，除了字段值外还记录使用了哪些字段，执行时按这些字段生成sql
+ */
+public class EntityRowParam extends BatchRowParam{
+
+	/**
+	 * insert或update的字段，按model中的顺序，与values一致
+	 */
+	private List<EntityColumn>	columns			= new ArrayList<EntityColumn>();
+
+	/**
+	 * 作为等于条件的字段，按model中的顺序，update时与keyValues一致，delete和select时与values一致
+	 */
+	private List<EntityColumn>	whereColumns	= new ArrayList<EntityColumn>();
+
+	public List<EntityColumn> getColumns(){
+		return columns;
+	}
+
+	public void setColumns(List<EntityColumn> columns){
+		this.columns = columns;
+	}
+
+	public List<EntityColumn> getWhereColumns(){
+		return whereColumns;
+	}
+
+	public void setWhereColumns(List<EntityColumn> whereColumns){
+		this.whereColumns = whereColumns;
+	}
+
+}
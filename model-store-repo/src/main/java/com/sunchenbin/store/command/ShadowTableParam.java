@@ -0,0 +1,150 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sunchenbin.store.utils.FingerprintTools;
+
+/**
+ * 影子表方式修改表结构时使用的参数
+ * 先按新结构创建影子表，通过触发器同步原表的并发修改，再按主键分批复制数据，最后原子的rename交换两张表
+ */
+public class ShadowTableParam{
+
+	/**
+	 * mysql表名和触发器名的最大长度
+	 */
+	public static final int	MAX_NAME_LENGTH	= 64;
+
+	/**
+	 * 原表名
+	 */
+	private String			tableName;
+
+	/**
+	 * 主键字段名，只支持单一字段的主键
+	 */
+	private String			keyColumn;
+
+	/**
+	 * 新旧两张表都有的字段，复制数据时只复制这些字段
+	 */
+	private List<String>	columns	= new ArrayList<String>();
+
+	/**
+	 * 每批复制的行数
+	 */
+	private int				chunkSize;
+
+	/**
+	 * 上一批复制到的主键值，为null时表示从头开始
+	 */
+	private Object			lastKey;
+
+	/**
+	 * 本批复制到的主键值
+	 */
+	private Object			chunkEndKey;
+
+	public ShadowTableParam(String tableName,String keyColumn){
+		this.tableName = tableName;
+		this.keyColumn = keyColumn;
+	}
+
+	/**
+	 * 按新结构创建的影子表
+	 *
+	 * @return
+	 */
+	public String getShadowTableName(){
+		return derivedName("new");
+	}
+
+	/**
+	 * 交换后原表改名成的表，交换完成后删除
+	 *
+	 * @return
+	 */
+	public String getOldTableName(){
+		return derivedName("old");
+	}
+
+	public String getInsertTriggerName(){
+		return derivedName("ins");
+	}
+
+	public String getUpdateTriggerName(){
+		return derivedName("upd");
+	}
+
+	public String getDeleteTriggerName(){
+		return derivedName("del");
+	}
+
+	/**
+	 * 由原表名生成影子表、原表和触发器的名字，格式为_表名_后缀
+	 * 超过mysql的长度限制时截短表名，并加上完整表名md5的前8位区分前缀相同的表
+	 * 同一张表每次生成的名字相同，才能清理上次中断时残留的表和触发器
+	 *
+	 * @param suffix
+	 * @return
+	 */
+	private String derivedName(String suffix){
+		String name = "_" + tableName + "_" + suffix;
+		if (name.length() <= MAX_NAME_LENGTH) {
+			return name;
+		}
+		String hash = FingerprintTools.md5(tableName).substring(0, 8);
+		int prefixLength = MAX_NAME_LENGTH - hash.length() - suffix.length() - 3;
+		return "_" + tableName.substring(0, prefixLength) + "_" + hash + "_" + suffix;
+	}
+
+	public String getTableName(){
+		return tableName;
+	}
+
+	public void setTableName(String tableName){
+		this.tableName = tableName;
+	}
+
+	public String getKeyColumn(){
+		return keyColumn;
+	}
+
+	public void setKeyColumn(String keyColumn){
+		this.keyColumn = keyColumn;
+	}
+
+	public List<String> getColumns(){
+		return columns;
+	}
+
+	public void setColumns(List<String> columns){
+		this.columns = columns;
+	}
+
+	public int getChunkSize(){
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize){
+		this.chunkSize = chunkSize;
+	}
+
+	public Object getLastKey(){
+		return lastKey;
+	}
+
+	public void setLastKey(Object lastKey){
+		this.lastKey = lastKey;
+	}
+
+	public Object getChunkEndKey(){
+		return chunkEndKey;
+	}
+
+	public void setChunkEndKey(Object chunkEndKey){
+		this.chunkEndKey = chunkEndKey;
+	}
+
+}
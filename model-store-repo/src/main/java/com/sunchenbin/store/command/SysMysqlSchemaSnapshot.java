@@ -0,0 +1,124 @@
+package com.sunchenbin.store.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 当前库结构的内存快照，一次性读取information_schema中tables、columns、statistics三张视图，
+ * 按表名建立索引，之后每个model都只和这份快照做对比，不需要再逐表查询information_schema
+ */
+public class SysMysqlSchemaSnapshot{
+
+	/**
+	 * 表名(小写)和表信息的对应关系
+	 */
+	private final Map<String, SysMysqlTables>			tableMap		= new HashMap<String, SysMysqlTables>();
+
+	/**
+	 * 表名(小写)和表中字段的对应关系，字段按ordinal_position排序
+	 */
+	private final Map<String, List<SysMysqlColumns>>	columnMap		= new HashMap<String, List<SysMysqlColumns>>();
+
+	/**
+	 * 表名(小写)和表中索引列的对应关系，按index_name、seq_in_index排序
+	 */
+	private final Map<String, List<SysMysqlStatistics>>	statisticsMap	= new HashMap<String, List<SysMysqlStatistics>>();
+
+	/**
+	 * 根据三张视图的查询结果构建快照
+	 *
+	 * @param tables
+	 * @param columns
+	 * @param statistics
+	 */
+	public SysMysqlSchemaSnapshot(List<SysMysqlTables> tables, List<SysMysqlColumns> columns, List<SysMysqlStatistics> statistics){
+		for (SysMysqlTables table : tables){
+			tableMap.put(key(table.getTable_name()), table);
+		}
+		for (SysMysqlColumns column : columns){
+			String key = key(column.getTable_name());
+			List<SysMysqlColumns> list = columnMap.get(key);
+			if (list == null) {
+				list = new ArrayList<SysMysqlColumns>();
+				columnMap.put(key, list);
+			}
+			list.add(column);
+		}
+		for (SysMysqlStatistics statistic : statistics){
+			String key = key(statistic.getTable_name());
+			List<SysMysqlStatistics> list = statisticsMap.get(key);
+			if (list == null) {
+				list = new ArrayList<SysMysqlStatistics>();
+				statisticsMap.put(key, list);
+			}
+			list.add(statistic);
+		}
+	}
+
+	/**
+	 * 表是否存在
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	public boolean hasTable(String tableName){
+		return tableMap.containsKey(key(tableName));
+	}
+
+	/**
+	 * 取得表的基本信息，不存在时返回null
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	public SysMysqlTables getTable(String tableName){
+		return tableMap.get(key(tableName));
+	}
+
+	/**
+	 * 取得表的字段结构，不存在时返回空的list
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	public List<SysMysqlColumns> getColumns(String tableName){
+		List<SysMysqlColumns> list = columnMap.get(key(tableName));
+		return list == null ? Collections.<SysMysqlColumns> emptyList() : list;
+	}
+
+	/**
+	 * 取得表的索引结构，不存在时返回空的list
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	public List<SysMysqlStatistics> getStatistics(String tableName){
+		List<SysMysqlStatistics> list = statisticsMap.get(key(tableName));
+		return list == null ? Collections.<SysMysqlStatistics> emptyList() : list;
+	}
+
+	/**
+	 * 表被删除后，从快照中移除
+	 *
+	 * @param tableName
+	 */
+	public void removeTable(String tableName){
+		String key = key(tableName);
+		tableMap.remove(key);
+		columnMap.remove(key);
+		statisticsMap.remove(key);
+	}
+
+	/**
+	 * information_schema中表名的比较是不区分大小写的，这里统一转成小写作为key
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	private static String key(String tableName){
+		return tableName.toLowerCase();
+	}
+}
@@ -0,0 +1,121 @@
+package com.sunchenbin.store.command;
+
+/**
+ * 用于查询库中表的基本信息(information_schema.tables)
+ */
+public class SysMysqlTables {
+
+	/**
+	 * 表名
+	 */
+	public static final String TABLE_NAME = "table_name";
+	/**
+	 * 估算的行数
+	 */
+	public static final String TABLE_ROWS = "table_rows";
+	/**
+	 * 数据大小(字节)
+	 */
+	public static final String DATA_LENGTH = "data_length";
+
+	/**
+	 * 库名
+	 */
+	private String table_schema;
+	/**
+	 * 表名
+	 */
+	private String table_name;
+	/**
+	 * 存储引擎
+	 */
+	private String engine;
+	/**
+	 * 估算的行数，innodb下不是精确值
+	 */
+	private Long table_rows;
+	/**
+	 * 数据大小(字节)
+	 */
+	private Long data_length;
+	/**
+	 * 索引大小(字节)
+	 */
+	private Long index_length;
+	private String table_collation;
+	private String create_options;
+	private String table_comment;
+
+	public String getTable_schema() {
+		return table_schema;
+	}
+
+	public void setTable_schema(String table_schema) {
+		this.table_schema = table_schema;
+	}
+
+	public String getTable_name() {
+		return table_name;
+	}
+
+	public void setTable_name(String table_name) {
+		this.table_name = table_name;
+	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public void setEngine(String engine) {
+		this.engine = engine;
+	}
+
+	public Long getTable_rows() {
+		return table_rows;
+	}
+
+	public void setTable_rows(Long table_rows) {
+		this.table_rows = table_rows;
+	}
+
+	public Long getData_length() {
+		return data_length;
+	}
+
+	public void setData_length(Long data_length) {
+		this.data_length = data_length;
+	}
+
+	public Long getIndex_length() {
+		return index_length;
+	}
+
+	public void setIndex_length(Long index_length) {
+		this.index_length = index_length;
+	}
+
+	public String getTable_collation() {
+		return table_collation;
+	}
+
+	public void setTable_collation(String table_collation) {
+		this.table_collation = table_collation;
+	}
+
+	public String getCreate_options() {
+		return create_options;
+	}
+
+	public void setCreate_options(String create_options) {
+		this.create_options = create_options;
+	}
+
+	public String getTable_comment() {
+		return table_comment;
+	}
+
+	public void setTable_comment(String table_comment) {
+		this.table_comment = table_comment;
+	}
+
+}
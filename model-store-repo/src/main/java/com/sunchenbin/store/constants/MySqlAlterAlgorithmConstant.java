@@ -0,0 +1,36 @@
+package com.sunchenbin.store.constants;
+
+/**
+ * alter table时可以指定的ALGORITHM和LOCK
+ * INSTANT只修改数据字典，不重建表(mysql8开始支持，只能使用默认的LOCK)
+ * INPLACE在原表上重建，配合LOCK=NONE时不阻塞读写
+ * COPY复制出一张新表，期间阻塞写操作
+ */
+public class MySqlAlterAlgorithmConstant{
+
+	public static final String	INSTANT		= "INSTANT";
+
+	public static final String	INPLACE		= "INPLACE";
+
+	public static final String	COPY		= "COPY";
+
+	/**
+	 * 不指定ALGORITHM，由mysql自行选择
+	 */
+	public static final String	DEFAULT		= "DEFAULT";
+
+	/**
+	 * 不加锁，不阻塞并发的读写
+	 */
+	public static final String	LOCK_NONE	= "NONE";
+
+	/**
+	 * mysql的错误码ER_ALTER_OPERATION_NOT_SUPPORTED，指定的ALGORITHM或LOCK不支持该变更
+	 */
+	public static final int		ER_ALTER_OPERATION_NOT_SUPPORTED		= 1845;
+
+	/**
+	 * mysql的错误码ER_ALTER_OPERATION_NOT_SUPPORTED_REASON，同上，错误信息中带有原因
+	 */
+	public static final int		ER_ALTER_OPERATION_NOT_SUPPORTED_REASON	= 1846;
+}
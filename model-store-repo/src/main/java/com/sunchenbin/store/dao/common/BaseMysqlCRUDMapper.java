@@ -5,6 +5,8 @@ import java.util.Map;
 
 import org.apache.ibatis.annotations.Param;
 
+import com.sunchenbin.store.command.BatchRowParam;
+
 
 /**
  * 创建更新表结构的Mapper
@@ -19,24 +21,71 @@ public interface BaseMysqlCRUDMapper {
 	 */
 	public void save(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
 	
+	/**
+	 * 多行insert批量保存，生成的自增主键会设置到每行的generatedKey中
+	 * @param tableName
+	 * @param columns
+	 * @param list 每行的字段值，顺序与columns一致
+	 */
+	public void saveBatch(@Param("tableName") String tableName, @Param("columns") List<String> columns, @Param("list") List<BatchRowParam> list);
+	
+	/**
+	 * 多行insert批量保存，主键或唯一索引重复时更新updateColumns中的字段
+	 * @param tableName
+	 * @param columns
+	 * @param updateColumns 重复时需要更新的字段
+	 * @param list 每行的字段值，顺序与columns一致
+	 */
+	public void upsertBatch(@Param("tableName") String tableName, @Param("columns") List<String> columns, @Param("updateColumns") List<String> updateColumns, @Param("list") List<BatchRowParam> list);
+	
 	/**
 	 * 更新
 	 * @param tableMap
 	 */
 	public void update(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
 	
+	/**
+	 * 按主键批量更新，每个字段使用case根据主键取各行的值，合并成一条update语句
+	 * @param tableName
+	 * @param keyColumns 主键字段名
+	 * @param columns 要更新的字段名
+	 * @param list 每行的主键值和字段值，顺序与keyColumns和columns一致
+	 */
+	public void updateBatch(@Param("tableName") String tableName, @Param("keyColumns") List<String> keyColumns, @Param("columns") List<String> columns, @Param("list") List<BatchRowParam> list);
+	
 	/**
 	 * 删除
 	 * @param tableMap
 	 */
 	public void delete(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
 	
+	/**
+	 * 按主键批量删除
+	 * @param tableName
+	 * @param keyColumns 主键字段名
+	 * @param list 每行的主键值，顺序与keyColumns一致
+	 */
+	public void deleteBatch(@Param("tableName") String tableName, @Param("keyColumns") List<String> keyColumns, @Param("list") List<BatchRowParam> list);
+	
 	/**
 	 * 查询
 	 * @param <T>
 	 * @param tableMap
 	 */
 	public List<Map<String,Object>> query(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
+	
+	/**
+	 * 查询条数
+	 * @param tableMap
+	 */
+	public long count(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
+	
+	/**
+	 * 是否存在
+	 * @param tableMap
+	 * @return 存在时返回1，不存在时返回null
+	 */
+	public Integer exists(@Param("tableMap") Map<Object, Map<Object, Object>> tableMap);
 
 	
 
@@ -5,8 +5,11 @@ import java.util.Map;
 
 import org.apache.ibatis.annotations.Param;
 
-import com.sunchenbin.store.command.CreateTableParam;
+import com.sunchenbin.store.command.AlterTableParam;
+import com.sunchenbin.store.command.ShadowTableParam;
 import com.sunchenbin.store.command.SysMysqlColumns;
+import com.sunchenbin.store.command.SysMysqlStatistics;
+import com.sunchenbin.store.command.SysMysqlTables;
 
 
 /**
@@ -19,8 +22,9 @@ public interface CreateMysqlTablesMapper {
 	/**
 	 * 根据结构注解解析出来的信息创建表
 	 * @param tableMap
+	 * @param indexMap 表名和要同时创建的索引(CreateIndexParam)的对应关系，可以为null
 	 */
-	public void createTable(@Param("tableMap") Map<String, List<Object>> tableMap);
+	public void createTable(@Param("tableMap") Map<String, List<Object>> tableMap, @Param("indexMap") Map<String, List<Object>> indexMap);
 
 	/**
 	 * 根据表名查询表在库中是否存在，存在返回1，不存在返回0
@@ -36,6 +40,30 @@ public interface CreateMysqlTablesMapper {
 	 */
 	public List<SysMysqlColumns> findTableEnsembleByTableName(@Param("tableName") String tableName);
 	
+	/**
+	 * 查询当前库中所有的表
+	 * @return
+	 */
+	public List<SysMysqlTables> findAllTables();
+	
+	/**
+	 * 查询当前库中所有表的字段结构，按表名和字段位置排序
+	 * @return
+	 */
+	public List<SysMysqlColumns> findAllTableColumns();
+	
+	/**
+	 * 查询当前库中所有表的索引结构，按表名、索引名和列在索引中的位置排序
+	 * @return
+	 */
+	public List<SysMysqlStatistics> findAllTableStatistics();
+	
+	/**
+	 * 查询mysql的版本，例如8.0.26
+	 * @return
+	 */
+	public String findMysqlVersion();
+	
 	/**
 	 * 增加字段
 	 * @param tableMap
@@ -60,6 +88,87 @@ public interface CreateMysqlTablesMapper {
 	 */
 	public void dropKeyTableField(@Param("tableMap") Map<String, Object> tableMap);
 	
+	/**
+	 * 将一张表的删除主键、增加、删除、修改字段以及删除、增加索引合并成一条alter语句执行
+	 * @param alterTable
+	 */
+	public void alterTable(@Param("alterTable") AlterTableParam alterTable);
+	
+	/**
+	 * 按原表的结构创建影子表
+	 * @param shadow
+	 */
+	public void createShadowTable(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 创建原表新增数据时同步到影子表的触发器
+	 * @param shadow
+	 */
+	public void createShadowInsertTrigger(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 创建原表修改数据时同步到影子表的触发器
+	 * @param shadow
+	 */
+	public void createShadowUpdateTrigger(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 创建原表删除数据时同步到影子表的触发器
+	 * @param shadow
+	 */
+	public void createShadowDeleteTrigger(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 删除触发器
+	 * @param triggerName
+	 */
+	public void dropTrigger(@Param("triggerName") String triggerName);
+	
+	/**
+	 * 查询本批要复制到的主键值，没有剩余数据时返回null
+	 * @param shadow
+	 * @return
+	 */
+	public Object findShadowChunkEndKey(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 查询当前连接的sql_mode
+	 * @return
+	 */
+	public String findSqlMode();
+	
+	/**
+	 * 设置当前连接的sql_mode
+	 * @param sqlMode
+	 */
+	public void setSqlMode(@Param("sqlMode") String sqlMode);
+	
+	/**
+	 * 查询当前连接上一条语句产生的警告数
+	 * @return
+	 */
+	public int findWarningCount();
+	
+	/**
+	 * 按主键范围复制一批数据到影子表
+	 * @param shadow
+	 */
+	public void copyShadowChunk(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 原子的交换原表和影子表
+	 * @param shadow
+	 */
+	public void swapShadowTable(@Param("shadow") ShadowTableParam shadow);
+	
+	/**
+	 * 查询表中按指定字段有重复值的组数，增加唯一索引前检查，有null的行不参与比较
+	 * @param tableName
+	 * @param columns 唯一索引的字段名
+	 * @return
+	 */
+	public long findDuplicateCount(@Param("tableName") String tableName, @Param("columns") List<String> columns);
+	
 	/**
 	 * 根据表名删除表
 	 * @param tableName
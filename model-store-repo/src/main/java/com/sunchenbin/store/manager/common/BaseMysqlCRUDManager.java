@@ -1,15 +1,25 @@
 package com.sunchenbin.store.manager.common;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface BaseMysqlCRUDManager<T>{
 
 	/**
 	 * 保存，如果主键有值则进行更新操作
+	 * insert时数据库生成的自增主键会设置到对象的自增字段中
 	 * @param t
 	 */
 	void save(T t);
 	
+	/**
+	 * 批量保存，全部执行insert，同一张表的数据合并成多行的insert语句分批执行
+	 * 数据库生成的自增主键会设置到各个对象的自增字段中
+	 * @param list
+	 * @return 与list顺序一致的自增主键，没有生成主键的对象对应null
+	 */
+	List<Long> saveAll(Collection<T> list);
+	
 	/**
 	 * 根据传入对象非空的条件删除
 	 * @param t
@@ -17,8 +27,81 @@ public interface BaseMysqlCRUDManager<T>{
 	void delete(T t);
 	
 	/**
-	 * 根据传入对象非空的条件进行查询
+	 * 保存，主键或唯一索引已经存在时更新有值的字段，一次执行完成，不需要先查询
+	 * @param t
+	 */
+	void upsert(T t);
+	
+	/**
+	 * 批量保存，主键或唯一索引已经存在时更新有值的字段，同一张表的数据合并成多行的insert语句分批执行
+	 * @param list
+	 */
+	void upsertAll(Collection<T> list);
+	
+	/**
+	 * 根据主键批量更新，只更新有值的字段，同一张表更新相同字段的数据合并成一条update语句分批执行
+	 * 主键没有值的对象会被忽略
+	 * @param list
+	 */
+	void updateAll(Collection<T> list);
+	
+	/**
+	 * 根据主键批量删除，同一张表的数据合并成where 主键 in (...)的语句分批执行
+	 * 主键没有值的对象会被忽略
+	 * @param list
+	 */
+	void deleteAll(Collection<T> list);
+	
+	/**
+	 * 根据传入对象非空的条件进行查询，所有字段都为空时查询整张表
 	 * @param t
 	 */
 	List<T> query(T t);
+	
+	/**
+	 * 根据传入对象非空的条件查询条数
+	 * @param t
+	 * @return
+	 */
+	long count(T t);
+	
+	/**
+	 * 根据传入对象非空的条件判断数据是否存在，找到一条就返回，不会传输匹配的数据
+	 * @param t
+	 * @return
+	 */
+	boolean exists(T t);
+	
+	/**
+	 * 根据传入对象非空的条件进行查询，只查询指定的字段，返回对象中其他字段为null
+	 * @param t
+	 * @param columns 表中的字段名，必须是对象中@Column配置的字段，不传时查询全部字段
+	 * @return
+	 */
+	List<T> query(T t, String... columns);
+	
+	/**
+	 * 根据传入对象非空的条件按主键分页查询，返回主键大于lastKey的一页数据，按主键排序
+	 * 与使用offset的分页不同，不需要扫描前面的数据，任何一页的开销都和第一页相同
+	 * @param t 每页的条数使用BaseModel的pageSize
+	 * @param lastKey 上一页最后一条数据的主键值，联合主键时按字段的声明顺序传入，不传时查询第一页
+	 * @return
+	 */
+	List<T> queryAfter(T t, Object... lastKey);
+	
+	/**
+	 * 根据传入对象非空的条件进行流式查询，结果逐行交给handler处理，适用于导出等结果很大的场合
+	 * 查询使用单独的数据库连接，不参与当前事务，查不到当前事务中还没有提交的修改，
+	 * handler中可以通过manager执行其他查询或修改，调用方有事务时这些操作在调用方的事务中执行
+	 * @param t
+	 * @param handler
+	 */
+	void stream(T t, EntityHandler<T> handler);
+	
+	/**
+	 * 取得model按主键查询的二级缓存，可以查看命中、未命中、淘汰的次数
+	 * @param entityClass
+	 * @return 没有使用@Table(cache = true)开启缓存时返回null
+	 */
+	EntityCache getCache(Class<?> entityClass);
 }
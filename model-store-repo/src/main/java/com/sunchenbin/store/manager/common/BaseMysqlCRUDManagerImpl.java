@@ -1,21 +1,54 @@
 package com.sunchenbin.store.manager.common;
 
-import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.PostConstruct;
+
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.sunchenbin.store.annotation.Column;
 import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.command.BatchParam;
+import com.sunchenbin.store.command.BaseModel;
+import com.sunchenbin.store.command.BatchRowParam;
+import com.sunchenbin.store.command.EntityRowParam;
 import com.sunchenbin.store.dao.common.BaseMysqlCRUDMapper;
 import com.sunchenbin.store.feilong.core.util.Validator;
+import com.sunchenbin.store.utils.ClassTools;
+import com.sunchenbin.store.utils.EntityColumn;
+import com.sunchenbin.store.utils.EntityMetadata;
+import com.sunchenbin.store.utils.MappedStatementTools;
 
 @Transactional
 @Service("baseMysqlCRUDManager")
@@ -23,156 +56,756 @@ public class BaseMysqlCRUDManagerImpl implements BaseMysqlCRUDManager{
 
 	private static final Logger	log	= LoggerFactory.getLogger(BaseMysqlCRUDManagerImpl.class);
 	
-	private static final String KEYFIELDMAP = "keyFieldMap";
+	/**
+	 * 静态sql语句注册到的namespace
+	 */
+	private static final String	NAMESPACE				= BaseMysqlCRUDMapper.class.getName();
+
+	private static final String	QUERY_STREAM_STATEMENT	= BaseMysqlCRUDMapper.class.getName() + ".queryStream";
+
+	private static final String	QUERY_AFTER_STATEMENT	= BaseMysqlCRUDMapper.class.getName() + ".queryAfter";
+
+	private static final String	QUERY_COLUMNS_STATEMENT	= BaseMysqlCRUDMapper.class.getName() + ".queryColumns";
+
+	/**
+	 * 不是BaseModel的对象按主键分页查询时每页的条数
+	 */
+	private static final int	DEFAULT_PAGE_SIZE		= 10;
+
+	/**
+	 * 批量操作时每条sql包含的最大行数，不配置时默认500
+	 */
+	private static final int	DEFAULT_BATCH_SIZE	= 500;
 
 	@Autowired
 	private BaseMysqlCRUDMapper	baseMysqlCRUDMapper;
 
-	public void save(Object obj){
-		boolean isSave = true;
-		Table tableName = obj.getClass().getAnnotation(Table.class);
-		if (Validator.isNullOrEmpty(tableName) || Validator.isNullOrEmpty(tableName.name())) {
-			log.error("必须使用model中的对象！");
+	@Autowired
+	private SqlSessionFactory	sqlSessionFactory;
+
+	/**
+	 * 执行按model映射结果的语句，参与spring的事务
+	 */
+	private SqlSessionTemplate	sqlSessionTemplate;
+
+	/**
+	 * 要扫描的model所属的包
+	 */
+	@Value("#{configProperties['mybatis.model.pack']}")
+	private String				pack;
+
+	/**
+	 * 批量操作时每条sql包含的最大行数
+	 */
+	@Value("#{configProperties['mybatis.crud.batch.size']}")
+	private String				batchSize;
+
+	/**
+	 * 启动时由batchSize解析出的行数，配置无效时使用默认值
+	 */
+	private int					batchRows	= DEFAULT_BATCH_SIZE;
+
+	/**
+	 * @Table(cache = true)的model的二级缓存
+	 */
+	private final ConcurrentMap<Class<?>, EntityCache>	caches		= new ConcurrentHashMap<Class<?>, EntityCache>();
+
+	/**
+	 * @Table(trackChanges = true)的model对象的字段值快照
+	 */
+	private final EntitySnapshots						snapshots	= new EntitySnapshots();
+
+	/**
+	 * 启动时为model注册按model映射结果的查询语句，以及单条数据增删改查的语句，包外的model在第一次使用时注册
+	 */
+	@PostConstruct
+	public void init(){
+		sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+		batchRows = getBatchSize();
+		if (Validator.isNullOrEmpty(pack)) {
 			return;
 		}
-		Map<Object, Map<Object, Object>> tableMap = new HashMap<Object, Map<Object, Object>>();
-		Map<Object, Object> dataMap = new HashMap<Object, Object>();
-		Map<String, Object> keyFieldMap = new HashMap<String, Object>();
-		Field[] declaredFields = obj.getClass().getDeclaredFields();
-		for (Field field : declaredFields){
-			try{
-				// 私有属性需要设置访问权限
-				field.setAccessible(true);
-				Column column = field.getAnnotation(Column.class);
-				if (Validator.isNullOrEmpty(column)) {
-					log.info("该field没有配置注解不是表中在字段！");
-					continue;
-				}
+		Configuration configuration = sqlSessionFactory.getConfiguration();
+		for (Class<?> clas : ClassTools.getClasses(pack, Table.class)){
+			EntityMetadata metadata = EntityMetadata.forClass(clas);
+			if (metadata != null) {
+				registerRowStatements(configuration, metadata);
+				MappedStatementTools.getEntityStatementId(configuration, QUERY_STREAM_STATEMENT, metadata);
+				MappedStatementTools.getEntityStatementId(configuration, QUERY_AFTER_STATEMENT, metadata);
+				MappedStatementTools.getEntityStatementId(configuration, QUERY_COLUMNS_STATEMENT, metadata);
+			}
+		}
+	}
 
-				// 如果是主键，并且不是空的时候，这时候应该是更新操作
-				if (column.isKey() && Validator.isNotNullOrEmpty(field.get(obj))) {
-					isSave = false;
-					keyFieldMap.put(field.getName(), field.get(obj));
-				}
+	public void save(Object obj){
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return;
+		}
+		Configuration configuration = sqlSessionFactory.getConfiguration();
+		EntityRowParam row = new EntityRowParam();
+		List<EntityColumn> keyColumns = row.getWhereColumns();
 
-				// 如果是自增,并且是保存的场合，不需要添加到map中做保存
-				if (isSave && column.isAutoIncrement()) {
-					log.info("字段：" + field.getName() + "是自增的不需要添加到map中");
-					continue;
-				}
+		// 如果是主键，并且不是空的时候，这时候应该是更新操作
+		for (EntityColumn column : metadata.getKeyColumns()){
+			Object value = column.getValue(obj);
+			if (Validator.isNotNullOrEmpty(value)) {
+				keyColumns.add(column);
+				row.getKeyValues().add(value);
+			}
+		}
+		boolean isSave = keyColumns.isEmpty();
 
-				dataMap.put(field.getName(), field.get(obj));
-			}catch (IllegalArgumentException e){
-				e.printStackTrace();
-			}catch (IllegalAccessException e){
-				e.printStackTrace();
+		boolean trackChanges = metadata.getTable().trackChanges();
+		List<EntityColumn> columns = row.getColumns();
+		for (int i = 0; i < metadata.getColumns().size(); i++){
+			EntityColumn column = metadata.getColumns().get(i);
+			Object value = column.getValue(obj);
+			// 值为null的字段不保存也不更新，更新时主键作为条件
+			if (value == null || (!isSave && column.isKey())) {
+				continue;
+			}
+			// 跟踪修改时只更新和快照不同的字段
+			if (!isSave && trackChanges && !snapshots.isDirty(obj, i, value)) {
+				continue;
 			}
+			columns.add(column);
+			row.getValues().add(value);
 		}
 		if (isSave) {
-			tableMap.put(tableName.name(), dataMap);
-			// 执行保存操作
-			baseMysqlCRUDMapper.save(tableMap);
-		}else{
-			dataMap.put(KEYFIELDMAP, keyFieldMap);
-			tableMap.put(tableName.name(), dataMap);
+			// 执行保存操作，数据库生成的自增主键写回到对象中
+			sqlSessionTemplate.insert(MappedStatementTools.getInsertStatementId(configuration, NAMESPACE, metadata), row);
+			setGeneratedKey(metadata, obj, row.getGeneratedKey());
+			snapshotAfterCommit(metadata, obj);
+		}else if (!columns.isEmpty()) {
 			// 执行更新操作根据主键
-			baseMysqlCRUDMapper.update(tableMap);
+			sqlSessionTemplate.update(MappedStatementTools.getUpdateStatementId(configuration, NAMESPACE, metadata), row);
+			evictCache(metadata, obj);
+			snapshotAfterCommit(metadata, obj);
 		}
 	}
 
-	public void delete(Object obj){
+	public List<Long> saveAll(Collection list){
+		List<Long> keys = new ArrayList<Long>();
+		if (Validator.isNullOrEmpty(list)) {
+			return keys;
+		}
+		// 按表和有值的字段分组，同一组的数据可以合并成一条多行的insert
+		Map<String, BatchParam> batchMap = new LinkedHashMap<String, BatchParam>();
+		List<BatchRowParam> rows = new ArrayList<BatchRowParam>();
+		for (Object obj : list){
+			EntityMetadata metadata = getMetadata(obj);
+			if (metadata == null) {
+				rows.add(null);
+				continue;
+			}
+			List<String> columns = new ArrayList<String>();
+			BatchRowParam row = buildInsertRow(metadata, obj, columns);
+			addBatchRow(batchMap, metadata, columns, row);
+			rows.add(row);
+		}
+		int size = batchRows;
+		for (BatchParam batch : batchMap.values()){
+			List<BatchRowParam> batchRows = batch.getRows();
+			for (int i = 0; i < batchRows.size(); i += size){
+				baseMysqlCRUDMapper.saveBatch(batch.getTableName(), batch.getColumns(), batchRows.subList(i, Math.min(i + size, batchRows.size())));
+			}
+		}
+		// 数据库生成的自增主键写回到对象中，和save一样记录保存后的快照
+		int index = 0;
+		for (Object obj : list){
+			BatchRowParam row = rows.get(index++);
+			if (row == null) {
+				keys.add(null);
+				continue;
+			}
+			EntityMetadata metadata = EntityMetadata.forClass(obj.getClass());
+			setGeneratedKey(metadata, obj, row.getGeneratedKey());
+			snapshotAfterCommit(metadata, obj);
+			keys.add(row.getGeneratedKey());
+		}
+		return keys;
+	}
 
-		// 得到表名
-		Table tableName = obj.getClass().getAnnotation(Table.class);
-		if (Validator.isNullOrEmpty(tableName) || Validator.isNullOrEmpty(tableName.name())) {
-			log.error("必须使用model中的对象！");
+	public void upsert(Object obj){
+		upsertAll(Collections.singletonList(obj));
+	}
+
+	public void upsertAll(Collection list){
+		if (Validator.isNullOrEmpty(list)) {
 			return;
 		}
-		Map<Object, Map<Object, Object>> tableMap = new HashMap<Object, Map<Object, Object>>();
-		Map<Object, Object> dataMap = new HashMap<Object, Object>();
-		
-		Field[] declaredFields = obj.getClass().getDeclaredFields();
-		
-		for (Field field : declaredFields){
-			// 设置访问权限
-			field.setAccessible(true);
-			// 得到字段的配置
-			Column column = field.getAnnotation(Column.class);
-			if (Validator.isNullOrEmpty(column)) {
-				log.info("该field没有配置注解不是表中在字段！");
+		Map<String, BatchParam> batchMap = new LinkedHashMap<String, BatchParam>();
+		// 有数据被upsert的model
+		Set<EntityMetadata> metadataSet = new LinkedHashSet<EntityMetadata>();
+		for (Object obj : list){
+			EntityMetadata metadata = getMetadata(obj);
+			if (metadata == null) {
 				continue;
 			}
-			try{
-				dataMap.put(column.name(), field.get(obj));
-			}catch (IllegalArgumentException e){
-				e.printStackTrace();
-			}catch (IllegalAccessException e){
-				e.printStackTrace();
+			List<String> columns = new ArrayList<String>();
+			BatchRowParam row = new BatchRowParam();
+			for (EntityColumn column : metadata.getColumns()){
+				Object value = column.getValue(obj);
+				// 值为null的字段不insert也不更新
+				if (value != null) {
+					columns.add(column.getName());
+					row.getValues().add(value);
+				}
+			}
+			if (columns.isEmpty()) {
+				continue;
+			}
+			addBatchRow(batchMap, metadata, columns, row);
+			metadataSet.add(metadata);
+		}
+		int size = batchRows;
+		for (BatchParam batch : batchMap.values()){
+			List<BatchRowParam> batchRows = batch.getRows();
+			for (int i = 0; i < batchRows.size(); i += size){
+				baseMysqlCRUDMapper.upsertBatch(batch.getTableName(), batch.getColumns(), batch.getUpdateColumns(), batchRows.subList(i, Math.min(i + size, batchRows.size())));
+			}
+		}
+		// 唯一索引重复时被更新的数据不一定是传入的主键，每个model清空一次整个缓存
+		for (EntityMetadata metadata : metadataSet){
+			evictCache(metadata, null);
+		}
+	}
+
+	public void updateAll(Collection list){
+		if (Validator.isNullOrEmpty(list)) {
+			return;
+		}
+		// 按表和有值的字段分组，同一组的数据可以合并成一条update
+		Map<String, BatchParam> batchMap = new LinkedHashMap<String, BatchParam>();
+		// 实际执行了update的对象，没有主键或者没有要更新的字段而被跳过的对象不需要处理缓存和快照
+		List<Object> updatedList = new ArrayList<Object>();
+		for (Object obj : list){
+			EntityMetadata metadata = getMetadata(obj);
+			BatchRowParam row = buildKeyRow(metadata, obj);
+			if (row == null) {
+				continue;
+			}
+			boolean trackChanges = metadata.getTable().trackChanges();
+			List<String> columns = new ArrayList<String>();
+			for (int i = 0; i < metadata.getColumns().size(); i++){
+				EntityColumn column = metadata.getColumns().get(i);
+				Object value = column.getValue(obj);
+				// 和save一样，值为null的字段不更新，跟踪修改时只更新和快照不同的字段
+				if (!column.isKey() && value != null && (!trackChanges || snapshots.isDirty(obj, i, value))) {
+					columns.add(column.getName());
+					row.getValues().add(value);
+				}
+			}
+			if (columns.isEmpty()) {
+				continue;
+			}
+			addBatchRow(batchMap, metadata, columns, row);
+			updatedList.add(obj);
+		}
+		int size = batchRows;
+		for (BatchParam batch : batchMap.values()){
+			List<BatchRowParam> batchRows = batch.getRows();
+			for (int i = 0; i < batchRows.size(); i += size){
+				baseMysqlCRUDMapper.updateBatch(batch.getTableName(), batch.getKeyColumns(), batch.getColumns(), batchRows.subList(i, Math.min(i + size, batchRows.size())));
+			}
+		}
+		for (Object obj : updatedList){
+			EntityMetadata metadata = EntityMetadata.forClass(obj.getClass());
+			evictCache(metadata, obj);
+			snapshotAfterCommit(metadata, obj);
+		}
+	}
+
+	public void deleteAll(Collection list){
+		if (Validator.isNullOrEmpty(list)) {
+			return;
+		}
+		Map<String, BatchParam> batchMap = new LinkedHashMap<String, BatchParam>();
+		List<Object> deletedList = new ArrayList<Object>();
+		for (Object obj : list){
+			EntityMetadata metadata = getMetadata(obj);
+			BatchRowParam row = buildKeyRow(metadata, obj);
+			if (row == null) {
+				continue;
 			}
+			addBatchRow(batchMap, metadata, new ArrayList<String>(), row);
+			deletedList.add(obj);
+		}
+		int size = batchRows;
+		for (BatchParam batch : batchMap.values()){
+			List<BatchRowParam> batchRows = batch.getRows();
+			for (int i = 0; i < batchRows.size(); i += size){
+				baseMysqlCRUDMapper.deleteBatch(batch.getTableName(), batch.getKeyColumns(), batchRows.subList(i, Math.min(i + size, batchRows.size())));
+			}
+		}
+		for (Object obj : deletedList){
+			evictCache(EntityMetadata.forClass(obj.getClass()), obj);
+			snapshots.remove(obj);
+		}
+	}
+
+	public void delete(Object obj){
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return;
+		}
+		EntityRowParam row = buildWhereRow(metadata, obj);
+		List<EntityColumn> whereColumns = row.getWhereColumns();
+		if (whereColumns.isEmpty()) {
+			log.error("删除时必须有不为null的字段作为条件！");
+			return;
 		}
-		tableMap.put(tableName.name(), dataMap);
-		baseMysqlCRUDMapper.delete(tableMap);
+		sqlSessionTemplate.delete(MappedStatementTools.getDeleteStatementId(sqlSessionFactory.getConfiguration(), NAMESPACE, metadata), row);
+		// 不是按主键删除时不能确定删除了哪些数据，evictCache会清空整个缓存
+		evictCache(metadata, whereColumns.equals(metadata.getKeyColumns()) ? obj : null);
+		snapshots.remove(obj);
 	}
 
+	/**
+	 * 自己不开启事务，调用方没有事务时按主键查询的结果才能放入缓存
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public List query(Object obj){
-		// 得到表名
-		Table tableName = obj.getClass().getAnnotation(Table.class);
-		if (Validator.isNullOrEmpty(tableName) || Validator.isNullOrEmpty(tableName.name())) {
-			log.error("必须使用model中的对象！");
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
 			return null;
 		}
-		Map<Object, Map<Object, Object>> tableMap = new HashMap<Object, Map<Object, Object>>();
-		Map<Object, Object> dataMap = new HashMap<Object, Object>();
-		
-		Field[] declaredFields = obj.getClass().getDeclaredFields();
-		
-		for (Field field : declaredFields){
-			// 设置访问权限
-			field.setAccessible(true);
-			// 得到字段的配置
-			Column column = field.getAnnotation(Column.class);
-			if (Validator.isNullOrEmpty(column)) {
-				log.info("该field没有配置注解不是表中在字段！");
-				continue;
+		EntityRowParam row = buildWhereRow(metadata, obj);
+		List<EntityColumn> whereColumns = row.getWhereColumns();
+		// 只有条件正好是全部主键时使用缓存
+		EntityCache cache = getEntityCache(metadata);
+		boolean byKey = cache != null && !whereColumns.isEmpty() && whereColumns.equals(metadata.getKeyColumns());
+		long cacheVersion = 0;
+		if (byKey) {
+			Object cached = cache.get(row.getValues());
+			if (cached != null) {
+				List<Object> list = new ArrayList<Object>();
+				list.add(cached);
+				return snapshot(metadata, list);
+			}
+			cacheVersion = cache.getVersion();
+		}
+		List list = sqlSessionTemplate.selectList(MappedStatementTools.getSelectStatementId(sqlSessionFactory.getConfiguration(), NAMESPACE, metadata), row);
+		// 事务中查询到的可能是还没有提交的数据，只在没有事务时放入缓存
+		if (byKey && list.size() == 1 && !TransactionSynchronizationManager.isActualTransactionActive()) {
+			cache.put(new ArrayList<Object>(row.getValues()), list.get(0), cacheVersion);
+		}
+		return snapshot(metadata, list);
+	}
+
+	public EntityCache getCache(Class entityClass){
+		EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+		return metadata == null ? null : getEntityCache(metadata);
+	}
+
+	public long count(Object obj){
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return 0;
+		}
+		return baseMysqlCRUDMapper.count(buildTableMap(metadata, obj));
+	}
+
+	public boolean exists(Object obj){
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return false;
+		}
+		return baseMysqlCRUDMapper.exists(buildTableMap(metadata, obj)) != null;
+	}
+
+	public List query(Object obj,String...columns){
+		if (columns == null || columns.length == 0) {
+			return query(obj);
+		}
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return null;
+		}
+		// 字段名会直接拼接到sql中，必须是@Column中配置的字段
+		List<String> columnList = new ArrayList<String>();
+		for (String column : columns){
+			if (metadata.getColumn(column) == null) {
+				throw new IllegalArgumentException("表" + metadata.getTableName() + "中没有配置字段" + column + "！");
 			}
-			try{
-				dataMap.put(column.name(), field.get(obj));
-			}catch (IllegalArgumentException e){
-				e.printStackTrace();
-			}catch (IllegalAccessException e){
-				e.printStackTrace();
+			if (!columnList.contains(column)) {
+				columnList.add(column);
 			}
 		}
-		tableMap.put(tableName.name(), dataMap);
-		List<Map<String, Object>> query = baseMysqlCRUDMapper.query(tableMap);
-		
-		List<Object> list = new ArrayList<Object>();
-		try{
-			for (Map<String, Object> map : query){
-				Object newInstance = obj.getClass().newInstance();
-				Field[] declaredFields2 = newInstance.getClass().getDeclaredFields();
-				for (Field field : declaredFields2){
-					field.setAccessible(true);
-					// 得到字段的配置
-					Column column = field.getAnnotation(Column.class);
-					if (Validator.isNullOrEmpty(column)) {
-						log.info("该field没有配置注解不是表中在字段！");
-						continue;
-					}
-					String name = field.getName();
-					field.set(newInstance, map.get(name));
+		Map<String, Object> param = buildQueryParam(metadata, obj);
+		param.put("columns", columnList);
+		String statementId = MappedStatementTools.getEntityStatementId(sqlSessionFactory.getConfiguration(), QUERY_COLUMNS_STATEMENT, metadata);
+		return snapshot(metadata, sqlSessionTemplate.selectList(statementId, param));
+	}
+
+	public List queryAfter(Object obj,Object...lastKey){
+		EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return null;
+		}
+		if (metadata.getKeyColumns().isEmpty()) {
+			throw new IllegalArgumentException("表" + metadata.getTableName() + "没有主键，不能按主键分页查询！");
+		}
+		List<Object> lastKeyList = lastKey == null ? new ArrayList<Object>() : Arrays.asList(lastKey);
+		if (!lastKeyList.isEmpty() && lastKeyList.size() != metadata.getKeyColumns().size()) {
+			throw new IllegalArgumentException("表" + metadata.getTableName() + "的主键有" + metadata.getKeyColumns().size() + "个字段，传入的lastKey有" + lastKeyList.size() + "个值！");
+		}
+		List<String> keyColumns = new ArrayList<String>();
+		for (EntityColumn column : metadata.getKeyColumns()){
+			keyColumns.add(column.getName());
+		}
+		Map<String, Object> param = buildQueryParam(metadata, obj);
+		param.put("keyColumns", keyColumns);
+		param.put("lastKey", lastKeyList);
+		param.put("pageSize", obj instanceof BaseModel ? ((BaseModel) obj).getPageSize() : DEFAULT_PAGE_SIZE);
+		String statementId = MappedStatementTools.getEntityStatementId(sqlSessionFactory.getConfiguration(), QUERY_AFTER_STATEMENT, metadata);
+		return snapshot(metadata, sqlSessionTemplate.selectList(statementId, param));
+	}
+
+	/**
+	 * 流式查询使用单独从连接池取得的连接，不使用当前事务的连接，
+	 * 否则结果没有读完之前handler在同一个事务中执行的其他查询会报Streaming result set is still active，
+	 * 自己不开启事务，避免读数据的过程中多占用一个连接
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public void stream(Object obj,EntityHandler handler){
+		final EntityMetadata metadata = getMetadata(obj);
+		if (metadata == null) {
+			return;
+		}
+		Configuration configuration = sqlSessionFactory.getConfiguration();
+		String statementId = MappedStatementTools.getEntityStatementId(configuration, QUERY_STREAM_STATEMENT, metadata);
+		Connection connection;
+		try {
+			connection = configuration.getEnvironment().getDataSource().getConnection();
+		}catch (SQLException e){
+			throw new RuntimeException("流式查询" + metadata.getTableName() + "时取得数据库连接失败", e);
+		}
+		SqlSession sqlSession = new DefaultSqlSession(configuration, configuration.newExecutor(new JdbcTransaction(connection), ExecutorType.SIMPLE));
+		// 查询结果按obj的类映射，和调用方传入的handler的泛型一致
+		@SuppressWarnings("unchecked")
+		final EntityHandler<Object> entityHandler = handler;
+		try {
+			sqlSession.select(statementId, buildQueryParam(metadata, obj), new ResultHandler<Object>(){
+
+				public void handleResult(ResultContext<? extends Object> resultContext){
+					entityHandler.handle(resultContext.getResultObject());
 				}
-				list.add(newInstance);
+			});
+		}finally{
+			// 同时把连接还给连接池
+			sqlSession.close();
+		}
+	}
+
+	/**
+	 * 取得model的二级缓存，第一次使用时创建
+	 *
+	 * @param metadata
+	 * @return 没有开启缓存时返回null
+	 */
+	private EntityCache getEntityCache(EntityMetadata metadata){
+		if (metadata == null || !metadata.getTable().cache() || metadata.getKeyColumns().isEmpty()) {
+			return null;
+		}
+		EntityCache cache = caches.get(metadata.getEntityClass());
+		if (cache == null) {
+			cache = new EntityCache(metadata, metadata.getTable().ttl() * 1000L, metadata.getTable().maxSize());
+			EntityCache existing = caches.putIfAbsent(metadata.getEntityClass(), cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * 开启了跟踪修改时，记录写入数据库的字段值
+	 * 值在写入时取得，事务中在提交后才替换原来的快照，事务回滚时保留原来的快照，重新保存时这些字段仍然会被更新
+	 *
+	 * @param metadata
+	 * @param obj
+	 */
+	private void snapshotAfterCommit(EntityMetadata metadata,final Object obj){
+		if (!metadata.getTable().trackChanges()) {
+			return;
+		}
+		final Object[] values = snapshots.capture(metadata, obj);
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			snapshots.put(obj, values);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter(){
+
+			public void afterCommit(){
+				snapshots.put(obj, values);
+			}
+		});
+	}
+
+	/**
+	 * 开启了跟踪修改时，记录查询到的对象当前的字段值
+	 *
+	 * @param metadata
+	 * @param list
+	 * @return 传入的list
+	 */
+	private List snapshot(EntityMetadata metadata,List list){
+		if (metadata.getTable().trackChanges()) {
+			for (Object obj : list){
+				snapshots.snapshot(metadata, obj);
 			}
-		}catch (InstantiationException e){
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}catch (IllegalAccessException e){
-			// TODO Auto-generated catch block
-			e.printStackTrace();
 		}
-		
 		return list;
 	}
 
+	/**
+	 * 数据被修改或者删除后使缓存失效，主键都有值时只删除该主键的缓存，否则清空整个缓存
+	 * 在事务中时提交前其他线程还能查到并缓存旧的数据，事务结束后再淘汰一次
+	 *
+	 * @param metadata
+	 * @param obj
+	 *            为null时清空整个缓存
+	 */
+	private void evictCache(EntityMetadata metadata,Object obj){
+		final EntityCache cache = getEntityCache(metadata);
+		if (cache == null) {
+			return;
+		}
+		List<Object> key = new ArrayList<Object>();
+		for (EntityColumn column : metadata.getKeyColumns()){
+			Object value = obj == null ? null : column.getValue(obj);
+			if (value == null) {
+				key = null;
+				break;
+			}
+			key.add(value);
+		}
+		final List<Object> evictKey = key;
+		evictCache(cache, evictKey);
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter(){
+
+				public void afterCompletion(int status){
+					evictCache(cache, evictKey);
+				}
+			});
+		}
+	}
+
+	/**
+	 * 淘汰一条缓存
+	 *
+	 * @param cache
+	 * @param key
+	 *            为null时清空整个缓存
+	 */
+	private void evictCache(EntityCache cache,List<Object> key){
+		if (key == null) {
+			cache.clear();
+		}else {
+			cache.remove(key);
+		}
+	}
+
+	/**
+	 * 注册model单条数据增删改查的语句，每种操作一条，sql在执行时按使用的字段生成
+	 *
+	 * @param configuration
+	 * @param metadata
+	 */
+	private void registerRowStatements(Configuration configuration,EntityMetadata metadata){
+		MappedStatementTools.getInsertStatementId(configuration, NAMESPACE, metadata);
+		MappedStatementTools.getUpdateStatementId(configuration, NAMESPACE, metadata);
+		MappedStatementTools.getDeleteStatementId(configuration, NAMESPACE, metadata);
+		MappedStatementTools.getSelectStatementId(configuration, NAMESPACE, metadata);
+	}
+
+	/**
+	 * 构建查询或删除条件的一行数据，值不为null的字段作为等于条件
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @return 作为条件的字段按model中的顺序放在whereColumns中
+	 */
+	private EntityRowParam buildWhereRow(EntityMetadata metadata,Object obj){
+		EntityRowParam row = new EntityRowParam();
+		for (EntityColumn column : metadata.getColumns()){
+			Object value = column.getValue(obj);
+			if (value != null) {
+				row.getWhereColumns().add(column);
+				row.getValues().add(value);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * 构建insert的一行数据，值为null的字段不insert，自增字段没有值时由数据库生成
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @param columns
+	 *            有值的字段名会按顺序加入到这里
+	 * @return
+	 */
+	private BatchRowParam buildInsertRow(EntityMetadata metadata,Object obj,List<String> columns){
+		BatchRowParam row = new BatchRowParam();
+		for (EntityColumn column : metadata.getColumns()){
+			Object value = column.getValue(obj);
+			if (value != null) {
+				columns.add(column.getName());
+				row.getValues().add(value);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * 把数据库生成的自增主键设置到对象的自增字段中，insert时指定了自增字段的值时数据库不会返回生成的主键
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @param generatedKey
+	 */
+	private void setGeneratedKey(EntityMetadata metadata,Object obj,Long generatedKey){
+		if (generatedKey == null || metadata.getAutoIncrementColumns().isEmpty()) {
+			return;
+		}
+		// mysql一张表只能有一个自增字段
+		EntityColumn column = metadata.getAutoIncrementColumns().get(0);
+		Class<?> type = column.getField().getType();
+		Object value;
+		if (type == Integer.class || type == int.class) {
+			value = generatedKey.intValue();
+		}else if (type == Short.class || type == short.class) {
+			value = generatedKey.shortValue();
+		}else if (type == BigInteger.class) {
+			value = BigInteger.valueOf(generatedKey);
+		}else if (type == BigDecimal.class) {
+			value = BigDecimal.valueOf(generatedKey);
+		}else if (type == String.class) {
+			value = generatedKey.toString();
+		}else{
+			value = generatedKey;
+		}
+		column.setValue(obj, value);
+	}
+
+	/**
+	 * 构建只有主键值的批量操作行
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @return 不是model中的对象、表没有主键或者主键没有值时返回null
+	 */
+	private BatchRowParam buildKeyRow(EntityMetadata metadata,Object obj){
+		if (metadata == null) {
+			return null;
+		}
+		if (metadata.getKeyColumns().isEmpty()) {
+			log.error("表" + metadata.getTableName() + "没有主键，不能按主键批量操作！");
+			return null;
+		}
+		BatchRowParam row = new BatchRowParam();
+		for (EntityColumn column : metadata.getKeyColumns()){
+			Object value = column.getValue(obj);
+			if (Validator.isNullOrEmpty(value)) {
+				log.error("表" + metadata.getTableName() + "的主键" + column.getName() + "没有值，忽略该对象！");
+				return null;
+			}
+			row.getKeyValues().add(value);
+		}
+		return row;
+	}
+
+	/**
+	 * 把一行数据加入到同一张表、同一组字段的批次中
+	 *
+	 * @param batchMap
+	 * @param metadata
+	 * @param columns
+	 * @param row
+	 */
+	private void addBatchRow(Map<String, BatchParam> batchMap,EntityMetadata metadata,List<String> columns,BatchRowParam row){
+		String batchKey = metadata.getTableName() + columns;
+		BatchParam batch = batchMap.get(batchKey);
+		if (batch == null) {
+			batch = new BatchParam(metadata.getTableName(), columns);
+			for (EntityColumn column : metadata.getKeyColumns()){
+				batch.getKeyColumns().add(column.getName());
+			}
+			batchMap.put(batchKey, batch);
+		}
+		batch.getRows().add(row);
+	}
+
+	/**
+	 * 批量操作时每条sql包含的最大行数
+	 *
+	 * @return
+	 */
+	private int getBatchSize(){
+		if (Validator.isNullOrEmpty(batchSize)) {
+			return DEFAULT_BATCH_SIZE;
+		}
+		int size;
+		try{
+			size = Integer.parseInt(batchSize.trim());
+		}catch (NumberFormatException e){
+			log.warn("mybatis.crud.batch.size配置的" + batchSize + "不是有效的数字，改为" + DEFAULT_BATCH_SIZE);
+			return DEFAULT_BATCH_SIZE;
+		}
+		if (size < 1) {
+			log.warn("mybatis.crud.batch.size配置的" + batchSize + "小于1，改为" + DEFAULT_BATCH_SIZE);
+			return DEFAULT_BATCH_SIZE;
+		}
+		return size;
+	}
+
+	/**
+	 * 取得对象所属model的元数据
+	 *
+	 * @param obj
+	 * @return 不是model中的对象时返回null
+	 */
+	private EntityMetadata getMetadata(Object obj){
+		EntityMetadata metadata = EntityMetadata.forClass(obj.getClass());
+		if (metadata == null) {
+			log.error("必须使用model中的对象！");
+		}
+		return metadata;
+	}
+
+	/**
+	 * 构建查询语句的参数，和调用mapper方法时@Param("tableMap")的参数相同
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @return
+	 */
+	private Map<String, Object> buildQueryParam(EntityMetadata metadata,Object obj){
+		Map<String, Object> param = new HashMap<String, Object>();
+		param.put("tableMap", buildTableMap(metadata, obj));
+		return param;
+	}
+
+	/**
+	 * 构建mapper的参数，表名到字段名和字段值的map
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @return
+	 */
+	private Map<Object, Map<Object, Object>> buildTableMap(EntityMetadata metadata,Object obj){
+		Map<Object, Map<Object, Object>> tableMap = new HashMap<Object, Map<Object, Object>>();
+		Map<Object, Object> dataMap = new HashMap<Object, Object>();
+		for (EntityColumn column : metadata.getColumns()){
+			dataMap.put(column.getName(), column.getValue(obj));
+		}
+		tableMap.put(metadata.getTableName(), dataMap);
+		return tableMap;
+	}
+
 }
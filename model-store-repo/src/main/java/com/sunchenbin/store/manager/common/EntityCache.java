@@ -0,0 +1,221 @@
+package com.sunchenbin.store.manager.common;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sunchenbin.store.utils.EntityColumn;
+import com.sunchenbin.store.utils.EntityMetadata;
+
+/**
+ * model按主键查询的二级缓存，按@Table的maxSize限制条数，超过时淘汰最久没有使用的数据，按ttl过期
+ * 缓存中保存的是字段值，每次命中都返回新的对象，调用方修改返回的对象不会影响缓存
+ * 每次淘汰都会增加版本号，查询前记录版本号，查询期间这条数据被淘汰过时不放入缓存，避免旧数据覆盖淘汰
+ */
+public class EntityCache{
+
+	/**
+	 * 最多保留的淘汰记录条数，超过时丢弃最早的记录，并且丢弃版本号不比它新的所有查询结果
+	 */
+	private static final int								MAX_TOMBSTONES	= 1000;
+
+	private final EntityMetadata						metadata;
+
+	/**
+	 * 有效时间，毫秒，小于等于0时不过期
+	 */
+	private final long									ttlMillis;
+
+	/**
+	 * 最多缓存的条数，小于等于0时不限制
+	 */
+	private final int									maxSize;
+
+	/**
+	 * 主键值到缓存数据的对应关系，按访问顺序排列，最前面的是最久没有使用的
+	 */
+	private final LinkedHashMap<List<Object>, CacheEntry>	entryMap;
+
+	/**
+	 * 被淘汰的主键值到淘汰时版本号的对应关系，按淘汰的先后排列
+	 */
+	private final LinkedHashMap<List<Object>, Long>		tombstones;
+
+	/**
+	 * 每次remove或clear时加1
+	 */
+	private long										version;
+
+	/**
+	 * 查询前的版本号小于这个值时查询结果一律不放入缓存，clear或者丢弃淘汰记录时更新
+	 */
+	private long										minPutVersion;
+
+	private long										hitCount;
+
+	private long										missCount;
+
+	/**
+	 * 因为超过条数被淘汰和过期被删除的次数
+	 */
+	private long										evictionCount;
+
+	public EntityCache(EntityMetadata metadata, long ttlMillis, int maxSize){
+		this.metadata = metadata;
+		this.ttlMillis = ttlMillis;
+		this.maxSize = maxSize;
+		this.entryMap = new LinkedHashMap<List<Object>, CacheEntry>(16, 0.75f, true){
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, CacheEntry> eldest){
+				if (EntityCache.this.maxSize > 0 && size() > EntityCache.this.maxSize) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+		this.tombstones = new LinkedHashMap<List<Object>, Long>(){
+
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, Long> eldest){
+				if (size() > MAX_TOMBSTONES) {
+					EntityCache.this.minPutVersion = Math.max(EntityCache.this.minPutVersion, eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * 取得当前的版本号，查询数据库之前调用，查询到的结果和这个版本号一起传给put
+	 *
+	 * @return
+	 */
+	public synchronized long getVersion(){
+		return version;
+	}
+
+	/**
+	 * 按主键取得缓存的对象
+	 *
+	 * @param key
+	 *            主键值，按主键字段的顺序
+	 * @return 没有缓存或者已经过期时返回null
+	 */
+	public synchronized Object get(List<Object> key){
+		CacheEntry entry = entryMap.get(key);
+		if (entry != null && entry.isExpired()) {
+			entryMap.remove(key);
+			evictionCount++;
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		Object obj = metadata.newInstance();
+		List<EntityColumn> columns = metadata.getColumns();
+		for (int i = 0; i < columns.size(); i++){
+			columns.get(i).setValue(obj, entry.values[i]);
+		}
+		return obj;
+	}
+
+	/**
+	 * 缓存查询到的对象，查询期间这条数据被淘汰过时不缓存
+	 *
+	 * @param key
+	 * @param obj
+	 * @param readVersion
+	 *            查询数据库之前getVersion取得的版本号
+	 * @return 是否放入了缓存
+	 */
+	public synchronized boolean put(List<Object> key,Object obj,long readVersion){
+		Long removedVersion = tombstones.get(key);
+		if (readVersion < minPutVersion || (removedVersion != null && removedVersion > readVersion)) {
+			return false;
+		}
+		List<EntityColumn> columns = metadata.getColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++){
+			values[i] = columns.get(i).getValue(obj);
+		}
+		entryMap.put(key, new CacheEntry(values, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE));
+		return true;
+	}
+
+	/**
+	 * 数据被修改或者删除时使缓存失效
+	 *
+	 * @param key
+	 */
+	public synchronized void remove(List<Object> key){
+		entryMap.remove(key);
+		// 重新放入，保证淘汰记录按淘汰的先后排列
+		tombstones.remove(key);
+		tombstones.put(key, ++version);
+	}
+
+	/**
+	 * 不能确定被修改的主键时，清空全部缓存
+	 */
+	public synchronized void clear(){
+		entryMap.clear();
+		tombstones.clear();
+		minPutVersion = ++version;
+	}
+
+	public synchronized int size(){
+		return entryMap.size();
+	}
+
+	public synchronized long getHitCount(){
+		return hitCount;
+	}
+
+	public synchronized long getMissCount(){
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount(){
+		return evictionCount;
+	}
+
+	/**
+	 * 命中率，还没有查询过时返回0
+	 *
+	 * @return
+	 */
+	public synchronized double getHitRate(){
+		long requestCount = hitCount + missCount;
+		return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+	}
+
+	public synchronized String toString(){
+		return "表" + metadata.getTableName() + "的缓存：条数=" + entryMap.size() + "，命中=" + hitCount + "，未命中=" + missCount + "，淘汰=" + evictionCount;
+	}
+
+	/**
+	 * 缓存的一条数据
+	 */
+	private static class CacheEntry{
+
+		private final Object[]	values;
+
+		private final long		expireTime;
+
+		private CacheEntry(Object[] values, long expireTime){
+			this.values = values;
+			this.expireTime = expireTime;
+		}
+
+		private boolean isExpired(){
+			return System.currentTimeMillis() > expireTime;
+		}
+	}
+}
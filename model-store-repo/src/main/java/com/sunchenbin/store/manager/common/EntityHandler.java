@@ -0,0 +1,15 @@
+package com.sunchenbin.store.manager.common;
+
+/**
+ * 流式查询时逐行处理查询结果
+ */
+public interface EntityHandler<T>{
+
+	/**
+	 * 处理一行查询结果，处理完后不再持有该对象时可以被回收
+	 * 流式查询使用单独的数据库连接，这里可以通过manager执行其他查询或修改，不会和没有读完的结果冲突
+	 *
+	 * @param t
+	 */
+	void handle(T t);
+}
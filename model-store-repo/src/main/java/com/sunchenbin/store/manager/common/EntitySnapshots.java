@@ -0,0 +1,125 @@
+package com.sunchenbin.store.manager.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sunchenbin.store.utils.EntityColumn;
+import com.sunchenbin.store.utils.EntityMetadata;
+
+/**
+ * 通过BaseMysqlCRUDManager加载或保存的对象的字段值快照，用于更新时只更新修改过的字段
+ * 只保存弱引用，对象不再被使用时快照随之回收
+ * 对象按引用查找，不使用model的equals/hashCode，字段相同的两个对象各自有自己的快照
+ */
+public class EntitySnapshots{
+
+	private final Map<IdentityWeakReference, Object[]>	snapshotMap	= new HashMap<IdentityWeakReference, Object[]>();
+
+	/**
+	 * 对象被回收后，对应的弱引用会放入这里，下次访问时从snapshotMap中删除
+	 */
+	private final ReferenceQueue<Object>				queue		= new ReferenceQueue<Object>();
+
+	/**
+	 * 记录对象当前的字段值
+	 *
+	 * @param metadata
+	 * @param obj
+	 */
+	public void snapshot(EntityMetadata metadata,Object obj){
+		put(obj, capture(metadata, obj));
+	}
+
+	/**
+	 * 取得对象当前的字段值，按model中字段的顺序，不记录到快照中
+	 *
+	 * @param metadata
+	 * @param obj
+	 * @return
+	 */
+	public Object[] capture(EntityMetadata metadata,Object obj){
+		List<EntityColumn> columns = metadata.getColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++){
+			values[i] = columns.get(i).getValue(obj);
+		}
+		return values;
+	}
+
+	/**
+	 * 用之前通过capture取得的字段值替换对象的快照
+	 *
+	 * @param obj
+	 * @param values
+	 */
+	public synchronized void put(Object obj,Object[] values){
+		expungeStaleEntries();
+		snapshotMap.put(new IdentityWeakReference(obj, queue), values);
+	}
+
+	/**
+	 * 字段的值与快照相比是否被修改过
+	 *
+	 * @param obj
+	 * @param index
+	 *            字段在model中的下标
+	 * @param value
+	 *            字段当前的值
+	 * @return 没有快照时返回true
+	 */
+	public synchronized boolean isDirty(Object obj,int index,Object value){
+		Object[] values = snapshotMap.get(new IdentityWeakReference(obj, null));
+		if (values == null) {
+			return true;
+		}
+		Object oldValue = values[index];
+		return oldValue == null ? value != null : !oldValue.equals(value);
+	}
+
+	public synchronized void remove(Object obj){
+		expungeStaleEntries();
+		snapshotMap.remove(new IdentityWeakReference(obj, null));
+	}
+
+	/**
+	 * 删除已经被回收的对象的快照
+	 */
+	private void expungeStaleEntries(){
+		Reference<?> reference;
+		while ((reference = queue.poll()) != null){
+			snapshotMap.remove(reference);
+		}
+	}
+
+	/**
+	 * 按引用比较的弱引用，对象被回收后只和自己相等
+	 */
+	private static class IdentityWeakReference extends WeakReference<Object>{
+
+		private final int	hash;
+
+		private IdentityWeakReference(Object obj, ReferenceQueue<Object> queue){
+			super(obj, queue);
+			this.hash = System.identityHashCode(obj);
+		}
+
+		public int hashCode(){
+			return hash;
+		}
+
+		public boolean equals(Object obj){
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof IdentityWeakReference)) {
+				return false;
+			}
+			Object referent = get();
+			return referent != null && referent == ((IdentityWeakReference) obj).get();
+		}
+	}
+}
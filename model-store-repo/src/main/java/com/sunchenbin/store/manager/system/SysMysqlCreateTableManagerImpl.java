@@ -1,19 +1,38 @@
 package com.sunchenbin.store.manager.system;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
 
-import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,16 +42,31 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Index;
 import com.sunchenbin.store.annotation.LengthCount;
 import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.annotation.Unique;
+import com.sunchenbin.store.command.AlterTableParam;
+import com.sunchenbin.store.command.CreateIndexParam;
 import com.sunchenbin.store.command.CreateTableParam;
 import com.sunchenbin.store.command.SysMysqlColumns;
+import com.sunchenbin.store.command.ShadowTableParam;
+import com.sunchenbin.store.command.SysMysqlSchemaSnapshot;
+import com.sunchenbin.store.command.SysMysqlStatistics;
+import com.sunchenbin.store.command.SysMysqlTables;
+import com.sunchenbin.store.constants.MySqlAlterAlgorithmConstant;
 import com.sunchenbin.store.constants.MySqlTypeConstant;
 import com.sunchenbin.store.dao.system.CreateMysqlTablesMapper;
+import com.sunchenbin.store.feilong.core.io.FileUtil;
+import com.sunchenbin.store.feilong.core.io.IOWriteUtil;
 import com.sunchenbin.store.feilong.core.util.CollectionsUtil;
 import com.sunchenbin.store.feilong.core.util.PropertiesUtil;
 import com.sunchenbin.store.feilong.core.util.Validator;
+import com.sunchenbin.store.utils.BoundSqlTools;
 import com.sunchenbin.store.utils.ClassTools;
+import com.sunchenbin.store.utils.EntityColumn;
+import com.sunchenbin.store.utils.EntityMetadata;
+import com.sunchenbin.store.utils.FingerprintTools;
 
 /**
  * 项目启动时自动扫描配置的目录中的model，根据配置的规则自动创建或更新表
@@ -47,8 +81,19 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 
 	private static final Logger	log	= LoggerFactory.getLogger(SysMysqlCreateTableManagerImpl.class);
 
+	/**
+	 * 从column_type中取出长度和小数位数，例如varchar(100)、decimal(10,2)
+	 */
+	private static final Pattern	COLUMN_LENGTH_PATTERN	= Pattern.compile("\\((\\d+)(?:,(\\d+))?\\)");
+
 	@Autowired
 	private CreateMysqlTablesMapper	createMysqlTablesMapper;
+
+	@Autowired
+	private DataSource				dataSource;
+
+	@Autowired
+	private SqlSessionFactory		sqlSessionFactory;
 	
 	/**
 	 * 要扫描的model所在的pack
@@ -57,11 +102,60 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 	private String pack;
 	
 	/**
-	 * 自动创建模式：update表示更新，create表示删除原表重新创建
+	 * 自动创建模式：update表示更新，create表示删除原表重新创建，shadow表示通过影子表复制数据的方式更新，
+	 * plan表示只输出要执行的ddl和预估的代价，不做任何修改
 	 */
 	@Value("#{configProperties['mybatis.table.auto']}")
 	private String tableAuto;
 
+	/**
+	 * 并行创建或修改表的线程数，不配置或者配置为1时逐张表执行，最多不超过连接池的maxActive
+	 */
+	@Value("#{configProperties['mybatis.table.threads']}")
+	private String tableThreads;
+
+	/**
+	 * 表结构指纹文件的路径，配置后model和数据库中的表结构自上次同步后都没有变化的表会被直接跳过
+	 */
+	@Value("#{configProperties['mybatis.table.fingerprint.file']}")
+	private String fingerprintFile;
+
+	/**
+	 * 是否使用online ddl的方式修改表，true时优先使用ALGORITHM=INSTANT，其次ALGORITHM=INPLACE,LOCK=NONE
+	 */
+	@Value("#{configProperties['mybatis.table.onlineDdl']}")
+	private String onlineDdl;
+
+	/**
+	 * 开启online ddl时，mysql不支持INSTANT和INPLACE,LOCK=NONE的表是否退回到不指定ALGORITHM的方式修改，默认false，
+	 * 不开启时这样的表会报错，避免在不知情的情况下长时间锁表
+	 */
+	@Value("#{configProperties['mybatis.table.onlineDdl.fallback']}")
+	private String onlineDdlFallback;
+
+	/**
+	 * plan模式下输出ddl脚本的文件路径，不配置时输出到日志中
+	 */
+	@Value("#{configProperties['mybatis.table.plan.file']}")
+	private String planFile;
+
+	/**
+	 * 影子表方式每批复制的行数，默认1000
+	 */
+	@Value("#{configProperties['mybatis.table.shadow.chunkSize']}")
+	private String shadowChunkSize;
+
+	/**
+	 * 影子表方式每批复制之间暂停的毫秒数，默认0
+	 */
+	@Value("#{configProperties['mybatis.table.shadow.throttle']}")
+	private String shadowThrottle;
+
+	/**
+	 * 开启online ddl时查询出的mysql版本
+	 */
+	private String mysqlVersion;
+
 	/**
 	 * 读取配置文件的三种状态（创建表、更新表、不做任何事情）
 	 */
@@ -70,7 +164,7 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 		
 		Map<String, Object> mySqlTypeAndLengthMap = mySqlTypeAndLengthMap();
 
-		Set<Class<?>> classes = ClassTools.getClasses(pack);
+		Set<Class<?>> classes = ClassTools.getClasses(pack, Table.class);
 
 		// 用于存需要创建的表名+结构
 		Map<String, List<Object>> newTableMap = new HashMap<String, List<Object>>();
@@ -86,12 +180,339 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 
 		// 用于存需要删除主键的表名+结构
 		Map<String, List<Object>> dropKeyTableMap = new HashMap<String, List<Object>>();
+
+		// 用于存新建表时同时创建的表名+索引
+		Map<String, List<Object>> newIndexTableMap = new HashMap<String, List<Object>>();
+
+		// 用于存需要增加索引的表名+索引
+		Map<String, List<Object>> addIndexTableMap = new HashMap<String, List<Object>>();
+
+		// 用于存需要删除索引的表名+索引名
+		Map<String, List<Object>> dropIndexTableMap = new HashMap<String, List<Object>>();
 		
+		// 一次性读取当前库的表结构快照，之后的对比都基于这份快照，不再逐表查询information_schema
+		SysMysqlSchemaSnapshot snapshot = buildSchemaSnapshot();
+
+		// 上次同步后记录的表结构指纹，没有配置指纹文件时为null
+		Properties fingerprints = loadFingerprints();
+
 		// 构建出全部表的增删改的map
-		allTableMapConstruct(mySqlTypeAndLengthMap, classes, newTableMap, modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap);
+		allTableMapConstruct(mySqlTypeAndLengthMap, classes, snapshot, fingerprints, newTableMap, modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap,
+				newIndexTableMap, addIndexTableMap, dropIndexTableMap);
+
+		if ("true".equals(onlineDdl) || "plan".equals(tableAuto)) {
+			mysqlVersion = createMysqlTablesMapper.findMysqlVersion();
+			log.info("mysql版本：" + mysqlVersion);
+		}
+
+		// plan模式只输出执行计划，不做任何修改
+		if ("plan".equals(tableAuto)) {
+			writeMigrationPlan(snapshot, newTableMap, modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap, newIndexTableMap, addIndexTableMap,
+					dropIndexTableMap);
+			return;
+		}
 
 		// 根据传入的map，分别去创建或修改表结构
-		createOrModifyTableConstruct(newTableMap, modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap);
+		createOrModifyTableConstruct(snapshot, newTableMap, modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap, newIndexTableMap, addIndexTableMap,
+				dropIndexTableMap);
+
+		// 记录同步后的表结构指纹
+		if (fingerprints != null) {
+			boolean changed = newTableMap.size() > 0 || modifyTableMap.size() > 0 || addTableMap.size() > 0 || removeTableMap.size() > 0
+					|| dropKeyTableMap.size() > 0 || addIndexTableMap.size() > 0 || dropIndexTableMap.size() > 0;
+			// 有表结构变更时快照已经过期，需要重新读取
+			storeFingerprints(mySqlTypeAndLengthMap, classes, changed ? buildSchemaSnapshot() : snapshot);
+		}
+	}
+
+	/**
+	 * 输出执行计划：按执行顺序列出每张表要执行的ddl，以及表的行数、数据大小和预估的ALGORITHM
+	 * 
+	 * @param snapshot
+	 * @param newTableMap
+	 * @param modifyTableMap
+	 * @param addTableMap
+	 * @param removeTableMap
+	 * @param dropKeyTableMap
+	 * @param newIndexTableMap
+	 * @param addIndexTableMap
+	 * @param dropIndexTableMap
+	 */
+	private void writeMigrationPlan(
+			SysMysqlSchemaSnapshot snapshot,
+			Map<String, List<Object>> newTableMap,
+			Map<String, List<Object>> modifyTableMap,
+			Map<String, List<Object>> addTableMap,
+			Map<String, List<Object>> removeTableMap,
+			Map<String, List<Object>> dropKeyTableMap,
+			Map<String, List<Object>> newIndexTableMap,
+			Map<String, List<Object>> addIndexTableMap,
+			Map<String, List<Object>> dropIndexTableMap){
+		Configuration configuration = sqlSessionFactory.getConfiguration();
+		String namespace = CreateMysqlTablesMapper.class.getName();
+		StringBuilder sb = new StringBuilder();
+		sb.append("-- mysql版本：").append(mysqlVersion).append("\n");
+
+		// 1. 创建表
+		for (Entry<String, List<Object>> entry : newTableMap.entrySet()){
+			Map<String, List<Object>> tableMap = new HashMap<String, List<Object>>();
+			tableMap.put(entry.getKey(), entry.getValue());
+			Map<String, Object> parameter = new HashMap<String, Object>();
+			parameter.put("tableMap", tableMap);
+			parameter.put("indexMap", newIndexTableMap);
+			sb.append("\n-- 创建表").append(entry.getKey()).append("\n");
+			appendStatement(sb, BoundSqlTools.render(configuration, namespace + ".createTable", parameter));
+		}
+
+		// 2. 修改表
+		for (AlterTableParam alterTableParam : buildAlterTableParams(modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap, addIndexTableMap,
+				dropIndexTableMap)){
+			String tableName = alterTableParam.getTableName();
+			List<String> changeList = new ArrayList<String>();
+			String algorithm = estimateAlgorithm(alterTableParam, snapshot, changeList);
+			SysMysqlTables table = snapshot.getTable(tableName);
+			sb.append("\n-- 修改表").append(tableName);
+			sb.append("，约").append(table.getTable_rows() == null ? 0 : table.getTable_rows()).append("行");
+			sb.append("，数据").append(FileUtil.formatSize(table.getData_length() == null ? 0 : table.getData_length()));
+			sb.append("，ALGORITHM=").append(algorithm).append("\n");
+			for (String change : changeList){
+				sb.append("--   ").append(change).append("\n");
+			}
+			Map<String, Object> parameter = new HashMap<String, Object>();
+			parameter.put("alterTable", alterTableParam);
+			appendStatement(sb, BoundSqlTools.render(configuration, namespace + ".alterTable", parameter));
+		}
+
+		if (Validator.isNullOrEmpty(planFile)) {
+			log.info("执行计划：\n" + sb);
+		}else{
+			IOWriteUtil.write(planFile, sb.toString());
+			log.info("执行计划已输出到" + planFile);
+		}
+	}
+
+	private void appendStatement(StringBuilder sb,String sql){
+		sb.append(sql);
+		if (!sql.endsWith(";")) {
+			sb.append(";");
+		}
+		sb.append("\n");
+	}
+
+	/**
+	 * 按mysql online ddl的规则预估每项变更可用的ALGORITHM，整张表取其中代价最大的
+	 * 
+	 * @param alterTableParam
+	 * @param snapshot
+	 * @param changeList
+	 *            用于存每项变更的说明
+	 * @return INSTANT、INPLACE或COPY
+	 */
+	private String estimateAlgorithm(AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot,List<String> changeList){
+		int version = getMysqlVersionNumber();
+		String tableAlgorithm = MySqlAlterAlgorithmConstant.INSTANT;
+
+		if (alterTableParam.getDropKeyFields().size() > 0) {
+			// 删除主键的同时又增加了主键可以INPLACE，只删除不增加需要COPY
+			boolean addKey = false;
+			for (Object obj : alterTableParam.getAddFields()){
+				addKey = addKey || ((CreateTableParam) obj).isFieldIsKey();
+			}
+			for (Object obj : alterTableParam.getModifyFields()){
+				addKey = addKey || ((CreateTableParam) obj).isFieldIsKey();
+			}
+			String algorithm = addKey ? MySqlAlterAlgorithmConstant.INPLACE : MySqlAlterAlgorithmConstant.COPY;
+			changeList.add("删除主键：" + algorithm);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, algorithm);
+		}
+		for (Object obj : alterTableParam.getAddFields()){
+			CreateTableParam createTableParam = (CreateTableParam) obj;
+			String algorithm;
+			if (createTableParam.isFieldIsAutoIncrement()) {
+				algorithm = MySqlAlterAlgorithmConstant.COPY;
+			}else if (createTableParam.isFieldIsKey()) {
+				algorithm = MySqlAlterAlgorithmConstant.INPLACE;
+			}else{
+				// 8.0.12开始在最后增加字段可以INSTANT
+				algorithm = version >= 80012 ? MySqlAlterAlgorithmConstant.INSTANT : MySqlAlterAlgorithmConstant.INPLACE;
+			}
+			changeList.add("增加字段" + createTableParam.getFieldName() + "：" + algorithm);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, algorithm);
+		}
+		for (Object obj : alterTableParam.getRemoveFields()){
+			// 8.0.29开始删除字段可以INSTANT
+			String algorithm = version >= 80029 ? MySqlAlterAlgorithmConstant.INSTANT : MySqlAlterAlgorithmConstant.INPLACE;
+			changeList.add("删除字段" + obj + "：" + algorithm);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, algorithm);
+		}
+		Map<String, SysMysqlColumns> columnMap = new HashMap<String, SysMysqlColumns>();
+		for (SysMysqlColumns sysColumn : snapshot.getColumns(alterTableParam.getTableName())){
+			columnMap.put(sysColumn.getColumn_name(), sysColumn);
+		}
+		for (Object obj : alterTableParam.getModifyFields()){
+			CreateTableParam createTableParam = (CreateTableParam) obj;
+			String algorithm = estimateModifyAlgorithm(createTableParam, columnMap.get(createTableParam.getFieldName()), version);
+			changeList.add("修改字段" + createTableParam.getFieldName() + "：" + algorithm);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, algorithm);
+		}
+		// 增加和删除二级索引都不需要重建表，可以INPLACE
+		for (Object obj : alterTableParam.getDropIndexes()){
+			changeList.add("删除索引" + obj + "：" + MySqlAlterAlgorithmConstant.INPLACE);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, MySqlAlterAlgorithmConstant.INPLACE);
+		}
+		for (Object obj : alterTableParam.getAddIndexes()){
+			changeList.add("增加索引" + ((CreateIndexParam) obj).getIndexName() + "：" + MySqlAlterAlgorithmConstant.INPLACE);
+			tableAlgorithm = maxAlgorithm(tableAlgorithm, MySqlAlterAlgorithmConstant.INPLACE);
+		}
+		return tableAlgorithm;
+	}
+
+	/**
+	 * 预估修改字段可用的ALGORITHM
+	 * 
+	 * @param createTableParam
+	 *            model中的字段
+	 * @param sysColumn
+	 *            数据库中的字段
+	 * @param version
+	 * @return
+	 */
+	private String estimateModifyAlgorithm(CreateTableParam createTableParam,SysMysqlColumns sysColumn,int version){
+		if (sysColumn == null) {
+			return MySqlAlterAlgorithmConstant.COPY;
+		}
+		// 1.类型或长度变化，只有varchar加长并且长度的存储字节数不变时可以INPLACE，其他都需要COPY
+		String typeAndLength = createTableParam.getFieldType().toLowerCase();
+		if (createTableParam.getFileTypeLength() == 1) {
+			typeAndLength = typeAndLength + "(" + createTableParam.getFieldLength() + ")";
+		}else if (createTableParam.getFileTypeLength() == 2) {
+			typeAndLength = typeAndLength + "(" + createTableParam.getFieldLength() + "," + createTableParam.getFieldDecimalLength() + ")";
+		}
+		if (!sysColumn.getColumn_type().toLowerCase().equals(typeAndLength)) {
+			if (MySqlTypeConstant.VARCHAR.equals(createTableParam.getFieldType().toLowerCase())
+					&& MySqlTypeConstant.VARCHAR.equals(sysColumn.getData_type().toLowerCase())
+					&& Validator.isNotNullOrEmpty(sysColumn.getCharacter_maximum_length())) {
+				int oldLength = Integer.parseInt(sysColumn.getCharacter_maximum_length());
+				int newLength = createTableParam.getFieldLength();
+				if (newLength >= oldLength && (oldLength < 256) == (newLength < 256)) {
+					return MySqlAlterAlgorithmConstant.INPLACE;
+				}
+			}
+			return MySqlAlterAlgorithmConstant.COPY;
+		}
+		// 2.自增的变化需要COPY
+		if ("auto_increment".equals(sysColumn.getExtra()) != createTableParam.isFieldIsAutoIncrement()) {
+			return MySqlAlterAlgorithmConstant.COPY;
+		}
+		// 3.变成主键、是否可以为null的变化需要重建表，可以INPLACE
+		if (!"PRI".equals(sysColumn.getColumn_key()) && createTableParam.isFieldIsKey()) {
+			return MySqlAlterAlgorithmConstant.INPLACE;
+		}
+		if ("YES".equals(sysColumn.getIs_nullable()) != createTableParam.isFieldIsNull()) {
+			return MySqlAlterAlgorithmConstant.INPLACE;
+		}
+		// 4.只修改默认值，只需要修改数据字典
+		return version >= 80000 ? MySqlAlterAlgorithmConstant.INSTANT : MySqlAlterAlgorithmConstant.INPLACE;
+	}
+
+	/**
+	 * 取两个ALGORITHM中代价更大的，INSTANT < INPLACE < COPY
+	 * 
+	 * @param algorithm1
+	 * @param algorithm2
+	 * @return
+	 */
+	private String maxAlgorithm(String algorithm1,String algorithm2){
+		List<String> order = Arrays.asList(
+				MySqlAlterAlgorithmConstant.INSTANT,
+				MySqlAlterAlgorithmConstant.INPLACE,
+				MySqlAlterAlgorithmConstant.COPY);
+		return order.indexOf(algorithm1) >= order.indexOf(algorithm2) ? algorithm1 : algorithm2;
+	}
+
+	/**
+	 * 读取指纹文件，没有配置时返回null，配置了但文件还不存在时返回空的Properties
+	 * 
+	 * @return
+	 */
+	private Properties loadFingerprints(){
+		if (Validator.isNullOrEmpty(fingerprintFile)) {
+			return null;
+		}
+		Properties fingerprints = new Properties();
+		File file = new File(fingerprintFile);
+		if (!file.exists()) {
+			return fingerprints;
+		}
+		InputStream inputStream = null;
+		try{
+			inputStream = new FileInputStream(file);
+			fingerprints.load(inputStream);
+		}catch (IOException e){
+			log.warn("读取表结构指纹文件" + fingerprintFile + "失败，本次将对比全部的表", e);
+			fingerprints.clear();
+		}finally{
+			closeQuietly(inputStream);
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * 计算全部model以及对应表的指纹，写入指纹文件
+	 * 
+	 * @param mySqlTypeAndLengthMap
+	 * @param classes
+	 * @param snapshot
+	 *            同步完成后的表结构快照
+	 */
+	private void storeFingerprints(Map<String, Object> mySqlTypeAndLengthMap,Set<Class<?>> classes,SysMysqlSchemaSnapshot snapshot){
+		Properties fingerprints = new Properties();
+		for (Class<?> clas : classes){
+			Table table = clas.getAnnotation(Table.class);
+			List<Object> newFieldList = new ArrayList<Object>();
+			tableFieldsConstruct(mySqlTypeAndLengthMap, clas, newFieldList);
+			List<Object> newIndexList = new ArrayList<Object>();
+			tableIndexesConstruct(clas, newIndexList);
+			fingerprints.setProperty(table.name(), buildFingerprint(newFieldList, newIndexList, snapshot, table.name()));
+		}
+		OutputStream outputStream = null;
+		try{
+			File file = new File(fingerprintFile);
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			outputStream = new FileOutputStream(file);
+			fingerprints.store(outputStream, "model fingerprint:table fingerprint");
+		}catch (IOException e){
+			log.warn("写入表结构指纹文件" + fingerprintFile + "失败", e);
+		}finally{
+			closeQuietly(outputStream);
+		}
+	}
+
+	/**
+	 * 拼接出model的指纹和数据库中表的指纹
+	 * 
+	 * @param newFieldList
+	 * @param newIndexList
+	 * @param snapshot
+	 * @param tableName
+	 * @return
+	 */
+	private String buildFingerprint(List<Object> newFieldList,List<Object> newIndexList,SysMysqlSchemaSnapshot snapshot,String tableName){
+		return FingerprintTools.modelFingerprint(newFieldList, newIndexList) + ":"
+				+ FingerprintTools.tableFingerprint(snapshot.getColumns(tableName), snapshot.getStatistics(tableName));
+	}
+
+	private void closeQuietly(Closeable closeable){
+		if (closeable == null) {
+			return;
+		}
+		try{
+			closeable.close();
+		}catch (IOException e){
+			log.warn("关闭流失败", e);
+		}
 	}
 
 	/**
@@ -99,21 +520,33 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 	 * 
 	 * @param mySqlTypeAndLengthMap
 	 * @param classes
+	 * @param snapshot
+	 *            当前库的表结构快照
+	 * @param fingerprints
+	 *            上次同步后记录的表结构指纹，为null时不做指纹判断
 	 * @param newTableMap
 	 * @param modifyTableMap
 	 * @param addTableMap
 	 * @param removeTableMap
 	 * @param dropKeyTableMap
+	 * @param newIndexTableMap
+	 * @param addIndexTableMap
+	 * @param dropIndexTableMap
 	 */
 	private void allTableMapConstruct(
 			Map<String, Object> mySqlTypeAndLengthMap,
 			Set<Class<?>> classes,
+			SysMysqlSchemaSnapshot snapshot,
+			Properties fingerprints,
 			Map<String, List<Object>> newTableMap,
 			Map<String, List<Object>> modifyTableMap,
 			Map<String, List<Object>> addTableMap,
 			Map<String, List<Object>> removeTableMap,
-			Map<String, List<Object>> dropKeyTableMap){
-		
+			Map<String, List<Object>> dropKeyTableMap,
+			Map<String, List<Object>> newIndexTableMap,
+			Map<String, List<Object>> addIndexTableMap,
+			Map<String, List<Object>> dropIndexTableMap){
+
 		for (Class<?> clas : classes){
 
 			Table table = clas.getAnnotation(Table.class);
@@ -131,21 +564,33 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 
 			// 迭代出所有model的所有fields存到newFieldList中
 			tableFieldsConstruct(mySqlTypeAndLengthMap, clas, newFieldList);
+
+			// 迭代出model中配置的所有索引存到newIndexList中
+			List<Object> newIndexList = new ArrayList<Object>();
+			tableIndexesConstruct(clas, newIndexList);
 			
 			// 如果配置文件配置的是create，表示将所有的表删掉重新创建
 			if("create".equals(tableAuto)){
 				createMysqlTablesMapper.dorpTableByName(table.name());
+				snapshot.removeTable(table.name());
 			}
 
-			// 先查该表是否以存在
-			int exist = createMysqlTablesMapper.findTableCountByTableName(table.name());
+			// model和表结构自上次同步后都没有变化时，直接跳过该表
+			if (fingerprints != null && snapshot.hasTable(table.name())
+					&& buildFingerprint(newFieldList, newIndexList, snapshot, table.name()).equals(fingerprints.getProperty(table.name()))) {
+				log.info("表" + table.name() + "的结构没有变化，跳过");
+				continue;
+			}
 
 			// 不存在时
-			if (exist == 0) {
+			if (!snapshot.hasTable(table.name())) {
 				newTableMap.put(table.name(), newFieldList);
+				if (newIndexList.size() > 0) {
+					newIndexTableMap.put(table.name(), newIndexList);
+				}
 			}else{
-				// 已存在时理论上做修改的操作，这里查出该表的结构
-				List<SysMysqlColumns> tableColumnList = createMysqlTablesMapper.findTableEnsembleByTableName(table.name());
+				// 已存在时理论上做修改的操作，这里从快照中取出该表的结构
+				List<SysMysqlColumns> tableColumnList = snapshot.getColumns(table.name());
 
 				// 从sysColumns中取出我们需要比较的列的List
 				// 先取出name用来筛选出增加和删除的字段
@@ -170,10 +615,27 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 						tableColumnList,
 						columnNames);
 
+				// 4. 找出增加和删除的索引
+				buildAddAndDropIndexes(addIndexTableMap, dropIndexTableMap, table, newIndexList, snapshot.getStatistics(table.name()));
 			}
 		}
 	}
 
+	/**
+	 * 一次性查询当前库中全部的表、字段、索引信息，构建出按表名索引的快照
+	 * 
+	 * @return
+	 */
+	private SysMysqlSchemaSnapshot buildSchemaSnapshot(){
+		log.info("开始读取当前库的表结构快照");
+		SysMysqlSchemaSnapshot snapshot = new SysMysqlSchemaSnapshot(
+				createMysqlTablesMapper.findAllTables(),
+				createMysqlTablesMapper.findAllTableColumns(),
+				createMysqlTablesMapper.findAllTableStatistics());
+		log.info("完成读取当前库的表结构快照");
+		return snapshot;
+	}
+
 	/**
 	 * 构建增加的删除的修改的字段
 	 * 
@@ -407,164 +869,808 @@ public class SysMysqlCreateTableManagerImpl implements SysMysqlCreateTableManage
 	 * @param newFieldList
 	 */
 	private void tableFieldsConstruct(Map<String, Object> mySqlTypeAndLengthMap,Class<?> clas,List<Object> newFieldList){
-		Field[] fields = clas.getDeclaredFields();
-		// 判断是否有父类，如果有拉取父类的field
-		if(clas.getSuperclass()!=null){
-			Class clsSup = clas.getSuperclass();
-			fields = (Field[]) ArrayUtils.addAll(fields,clsSup.getDeclaredFields());
+		// 与BaseMysqlCRUDManager使用相同的元数据，包含整个继承链上的字段
+		EntityMetadata metadata = EntityMetadata.forClass(clas);
+		if (metadata == null) {
+			return;
 		}
 
-		for (Field field : fields){
-			// 判断方法中是否有指定注解类型的注解
-			boolean hasAnnotation = field.isAnnotationPresent(Column.class);
-			if (hasAnnotation) {
-				// 根据注解类型返回方法的指定类型注解
-				Column column = field.getAnnotation(Column.class);
-				CreateTableParam param = new CreateTableParam();
-				param.setFieldName(column.name());
-				param.setFieldType(column.type().toLowerCase());
-				param.setFieldLength(column.length());
-				param.setFieldDecimalLength(column.decimalLength());
-				param.setFieldIsNull(column.isNull());
-				param.setFieldIsKey(column.isKey());
-				param.setFieldIsAutoIncrement(column.isAutoIncrement());
-				param.setFieldDefaultValue(column.defaultValue());
-				int length = (Integer) mySqlTypeAndLengthMap.get(column.type());
-				param.setFileTypeLength(length);
-				newFieldList.add(param);
+		for (EntityColumn entityColumn : metadata.getColumns()){
+			Column column = entityColumn.getColumn();
+			CreateTableParam param = new CreateTableParam();
+			param.setFieldName(column.name());
+			param.setFieldType(column.type().toLowerCase());
+			param.setFieldLength(column.length());
+			param.setFieldDecimalLength(column.decimalLength());
+			param.setFieldIsNull(column.isNull());
+			param.setFieldIsKey(column.isKey());
+			param.setFieldIsAutoIncrement(column.isAutoIncrement());
+			param.setFieldDefaultValue(column.defaultValue());
+			int length = (Integer) mySqlTypeAndLengthMap.get(column.type());
+			param.setFileTypeLength(length);
+			newFieldList.add(param);
+		}
+	}
+
+	/**
+	 * 迭代出model中配置的所有索引存到newIndexList中，
+	 * 先是字段上的@Index、@Unique，然后是@Table中的indexes、uniques，索引名相同时只保留第一个
+	 * 
+	 * @param clas
+	 *            准备做为创建表依据的class
+	 * @param newIndexList
+	 */
+	private void tableIndexesConstruct(Class<?> clas,List<Object> newIndexList){
+		EntityMetadata metadata = EntityMetadata.forClass(clas);
+		if (metadata == null) {
+			return;
+		}
+
+		// 索引名(小写)为key，mysql中索引名不区分大小写
+		Map<String, CreateIndexParam> indexMap = new LinkedHashMap<String, CreateIndexParam>();
+		for (EntityColumn entityColumn : metadata.getColumns()){
+			Index index = entityColumn.getField().getAnnotation(Index.class);
+			if (index != null) {
+				addIndexParam(indexMap, metadata, index.name(), false, new String[] { entityColumn.getName() });
+			}
+			Unique unique = entityColumn.getField().getAnnotation(Unique.class);
+			if (unique != null) {
+				addIndexParam(indexMap, metadata, unique.name(), true, new String[] { entityColumn.getName() });
+			}
+		}
+		for (Index index : metadata.getTable().indexes()){
+			addIndexParam(indexMap, metadata, index.name(), false, index.columns());
+		}
+		for (Unique unique : metadata.getTable().uniques()){
+			addIndexParam(indexMap, metadata, unique.name(), true, unique.columns());
+		}
+		newIndexList.addAll(indexMap.values());
+	}
+
+	/**
+	 * 校验并构建一个索引，没有配置字段或者字段在model中不存在时忽略该索引
+	 * 
+	 * @param indexMap
+	 * @param metadata
+	 * @param indexName
+	 *            为空时按前缀加字段名生成
+	 * @param unique
+	 * @param columns
+	 */
+	private void addIndexParam(Map<String, CreateIndexParam> indexMap,EntityMetadata metadata,String indexName,boolean unique,String[] columns){
+		String tableName = metadata.getTableName();
+		if (columns.length == 0) {
+			log.warn("表" + tableName + "的索引" + indexName + "没有配置字段，忽略该索引");
+			return;
+		}
+		StringBuilder sb = new StringBuilder(unique ? CreateIndexParam.UNIQUE_PREFIX : CreateIndexParam.INDEX_PREFIX);
+		for (int i = 0; i < columns.length; i++){
+			if (metadata.getColumn(columns[i]) == null) {
+				log.warn("表" + tableName + "的索引中的字段" + columns[i] + "在model中不存在，忽略该索引");
+				return;
+			}
+			sb.append(i == 0 ? "" : "_").append(columns[i]);
+		}
+		if (Validator.isNullOrEmpty(indexName)) {
+			indexName = sb.toString();
+		}
+		if (indexMap.containsKey(indexName.toLowerCase())) {
+			log.warn("表" + tableName + "的索引名" + indexName + "重复，只保留第一个");
+			return;
+		}
+		CreateIndexParam param = new CreateIndexParam();
+		param.setIndexName(indexName);
+		param.setIndexIsUnique(unique);
+		param.setIndexColumns(Arrays.asList(columns));
+		indexMap.put(indexName.toLowerCase(), param);
+	}
+
+	/**
+	 * 根据数据库中表的索引和model中配置的索引对比找出增加和删除的索引
+	 * 名字相同但字段或者唯一性不同的索引先删除再重新创建；
+	 * 数据库中有model中没有的索引，只删除以idx_、uk_开头的，其他的认为是手工创建的，保留不动
+	 * 
+	 * @param addIndexTableMap
+	 * @param dropIndexTableMap
+	 * @param table
+	 * @param newIndexList
+	 *            model中的索引
+	 * @param statistics
+	 *            数据库中的索引
+	 */
+	private void buildAddAndDropIndexes(
+			Map<String, List<Object>> addIndexTableMap,
+			Map<String, List<Object>> dropIndexTableMap,
+			Table table,
+			List<Object> newIndexList,
+			List<SysMysqlStatistics> statistics){
+		// 将数据库中除主键以外的索引按索引名(小写)归类，statistics已经按seq_in_index排序
+		Map<String, CreateIndexParam> sysIndexMap = new LinkedHashMap<String, CreateIndexParam>();
+		for (SysMysqlStatistics statistic : statistics){
+			if (SysMysqlStatistics.PRIMARY.equals(statistic.getIndex_name())) {
+				continue;
+			}
+			String key = statistic.getIndex_name().toLowerCase();
+			CreateIndexParam sysIndex = sysIndexMap.get(key);
+			if (sysIndex == null) {
+				sysIndex = new CreateIndexParam();
+				sysIndex.setIndexName(statistic.getIndex_name());
+				sysIndex.setIndexIsUnique(Integer.valueOf(0).equals(statistic.getNon_unique()));
+				sysIndexMap.put(key, sysIndex);
+			}
+			sysIndex.getIndexColumns().add(statistic.getColumn_name());
+		}
+
+		List<Object> addIndexList = new ArrayList<Object>();
+		List<Object> dropIndexList = new ArrayList<Object>();
+		Set<String> indexNames = new HashSet<String>();
+		for (Object obj : newIndexList){
+			CreateIndexParam createIndexParam = (CreateIndexParam) obj;
+			String key = createIndexParam.getIndexName().toLowerCase();
+			indexNames.add(key);
+			CreateIndexParam sysIndex = sysIndexMap.get(key);
+			if (sysIndex == null) {
+				addIndexList.add(createIndexParam);
+			}else if (!isSameIndex(createIndexParam, sysIndex)) {
+				dropIndexList.add(sysIndex.getIndexName());
+				addIndexList.add(createIndexParam);
+			}
+		}
+		for (Entry<String, CreateIndexParam> entry : sysIndexMap.entrySet()){
+			String key = entry.getKey();
+			if (!indexNames.contains(key) && (key.startsWith(CreateIndexParam.INDEX_PREFIX) || key.startsWith(CreateIndexParam.UNIQUE_PREFIX))) {
+				dropIndexList.add(entry.getValue().getIndexName());
 			}
 		}
+
+		if (addIndexList.size() > 0) {
+			addIndexTableMap.put(table.name(), addIndexList);
+		}
+		if (dropIndexList.size() > 0) {
+			dropIndexTableMap.put(table.name(), dropIndexList);
+		}
+	}
+
+	/**
+	 * 判断两个索引的唯一性和字段(包括顺序)是否相同，字段名不区分大小写
+	 * 
+	 * @param createIndexParam
+	 * @param sysIndex
+	 * @return
+	 */
+	private boolean isSameIndex(CreateIndexParam createIndexParam,CreateIndexParam sysIndex){
+		if (createIndexParam.isIndexIsUnique() != sysIndex.isIndexIsUnique()) {
+			return false;
+		}
+		List<String> columns = createIndexParam.getIndexColumns();
+		List<String> sysColumns = sysIndex.getIndexColumns();
+		if (columns.size() != sysColumns.size()) {
+			return false;
+		}
+		for (int i = 0; i < columns.size(); i++){
+			if (!columns.get(i).equalsIgnoreCase(sysColumns.get(i))) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
 	 * 根据传入的map创建或修改表结构
 	 * 
+	 * @param snapshot
+	 *            修改前的表结构快照
 	 * @param newTableMap
 	 * @param modifyTableMap
 	 * @param addTableMap
 	 * @param removeTableMap
 	 * @param dropKeyTableMap
+	 * @param newIndexTableMap
+	 * @param addIndexTableMap
+	 * @param dropIndexTableMap
 	 */
 	private void createOrModifyTableConstruct(
+			SysMysqlSchemaSnapshot snapshot,
 			Map<String, List<Object>> newTableMap,
 			Map<String, List<Object>> modifyTableMap,
 			Map<String, List<Object>> addTableMap,
 			Map<String, List<Object>> removeTableMap,
-			Map<String, List<Object>> dropKeyTableMap){
-		// 1. 创建表
-		createTableByMap(newTableMap);
-		// 2. 删除要变更主键的表的原来的字段的主键
-		dropFieldsKeyByMap(dropKeyTableMap);
-		// 3. 添加新的字段
-		addFieldsByMap(addTableMap);
-		// 4. 删除字段
-		removeFieldsByMap(removeTableMap);
-		// 5. 修改字段类型等
-		modifyFieldsByMap(modifyTableMap);
+			Map<String, List<Object>> dropKeyTableMap,
+			Map<String, List<Object>> newIndexTableMap,
+			Map<String, List<Object>> addIndexTableMap,
+			Map<String, List<Object>> dropIndexTableMap){
+		List<AlterTableParam> alterTableParams = buildAlterTableParams(modifyTableMap, addTableMap, removeTableMap, dropKeyTableMap, addIndexTableMap,
+				dropIndexTableMap);
+		int threads = getTableThreads();
+		if (threads > 1) {
+			// 各表之间互不影响，并行执行
+			parallelCreateOrModifyTable(threads, snapshot, newTableMap, newIndexTableMap, alterTableParams);
+			return;
+		}
+		// 1. 创建表，同时创建索引
+		createTableByMap(newTableMap, newIndexTableMap);
+		// 2. 按表合并删除主键、索引，添加字段、删除字段、修改字段，增加索引的操作，每张表只执行一条alter语句
+		for (AlterTableParam alterTableParam : alterTableParams){
+			alterTableByParam(alterTableParam, snapshot);
+		}
 	}
 
 	/**
-	 * 根据map结构修改表中的字段类型等
+	 * 用固定大小的线程池并行创建或修改表，每个线程执行时各自从连接池中取连接
+	 * 某张表失败不影响其他表，全部执行完后汇总失败的表统一抛出
 	 * 
-	 * @param modifyTableMap
+	 * @param threads
+	 * @param snapshot
+	 * @param newTableMap
+	 * @param newIndexTableMap
+	 * @param alterTableParams
 	 */
-	private void modifyFieldsByMap(Map<String, List<Object>> modifyTableMap){
-		// 做修改字段操作
-		if (modifyTableMap.size() > 0) {
-			for (Entry<String, List<Object>> entry : modifyTableMap.entrySet()){
-				for (Object obj : entry.getValue()){
-					Map<String, Object> map = new HashMap<String, Object>();
-					map.put(entry.getKey(), obj);
-					CreateTableParam fieldProperties = (CreateTableParam) obj;
-					log.info("开始修改表" + entry.getKey() + "中的字段" + fieldProperties.getFieldName());
-					createMysqlTablesMapper.modifyTableField(map);
-					log.info("完成修改表" + entry.getKey() + "中的字段" + fieldProperties.getFieldName());
-				}
+	private void parallelCreateOrModifyTable(
+			int threads,
+			final SysMysqlSchemaSnapshot snapshot,
+			Map<String, List<Object>> newTableMap,
+			final Map<String, List<Object>> newIndexTableMap,
+			List<AlterTableParam> alterTableParams){
+		log.info("开始使用" + threads + "个线程并行创建或修改表");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Map<String, Future<?>> futureMap = new LinkedHashMap<String, Future<?>>();
+		try{
+			for (final Entry<String, List<Object>> entry : newTableMap.entrySet()){
+				futureMap.put(entry.getKey(), executor.submit(new Runnable(){
+
+					public void run(){
+						createTable(entry.getKey(), entry.getValue(), newIndexTableMap.get(entry.getKey()));
+					}
+				}));
+			}
+			for (final AlterTableParam alterTableParam : alterTableParams){
+				futureMap.put(alterTableParam.getTableName(), executor.submit(new Runnable(){
+
+					public void run(){
+						alterTableByParam(alterTableParam, snapshot);
+					}
+				}));
 			}
+		}finally{
+			executor.shutdown();
 		}
+
+		// 收集每张表的执行结果
+		Map<String, Throwable> failureMap = new LinkedHashMap<String, Throwable>();
+		for (Entry<String, Future<?>> entry : futureMap.entrySet()){
+			try{
+				entry.getValue().get();
+			}catch (ExecutionException e){
+				failureMap.put(entry.getKey(), e.getCause());
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				throw new RuntimeException("等待创建或修改表" + entry.getKey() + "时被中断", e);
+			}
+		}
+		if (failureMap.size() > 0) {
+			for (Entry<String, Throwable> entry : failureMap.entrySet()){
+				log.error("创建或修改表" + entry.getKey() + "失败", entry.getValue());
+			}
+			throw new RuntimeException("创建或修改表失败：" + failureMap.keySet(), failureMap.values().iterator().next());
+		}
+		log.info("完成并行创建或修改表");
 	}
 
 	/**
-	 * 根据map结构删除表中的字段
+	 * 取得并行执行的线程数，不能超过连接池的最大连接数
 	 * 
+	 * @return
+	 */
+	private int getTableThreads(){
+		if (Validator.isNullOrEmpty(tableThreads)) {
+			return 1;
+		}
+		int threads;
+		try{
+			threads = Integer.parseInt(tableThreads.trim());
+		}catch (NumberFormatException e){
+			log.warn("mybatis.table.threads配置的" + tableThreads + "不是有效的数字，改为逐张表执行");
+			return 1;
+		}
+		if (threads < 1) {
+			log.warn("mybatis.table.threads配置的" + tableThreads + "小于1，改为逐张表执行");
+			return 1;
+		}
+		if (dataSource instanceof BasicDataSource) {
+			int maxActive = ((BasicDataSource) dataSource).getMaxActive();
+			// maxActive小于等于0时表示不限制
+			if (maxActive > 0 && threads > maxActive) {
+				log.warn("配置的线程数" + threads + "超过了连接池的maxActive，改为" + maxActive);
+				threads = maxActive;
+			}
+		}
+		return threads;
+	}
+
+	/**
+	 * 将按操作类型划分的map按表重新归类，每张表构建出一个AlterTableParam
+	 * 
+	 * @param modifyTableMap
+	 * @param addTableMap
 	 * @param removeTableMap
+	 * @param dropKeyTableMap
+	 * @param addIndexTableMap
+	 * @param dropIndexTableMap
+	 * @return
+	 */
+	private List<AlterTableParam> buildAlterTableParams(
+			Map<String, List<Object>> modifyTableMap,
+			Map<String, List<Object>> addTableMap,
+			Map<String, List<Object>> removeTableMap,
+			Map<String, List<Object>> dropKeyTableMap,
+			Map<String, List<Object>> addIndexTableMap,
+			Map<String, List<Object>> dropIndexTableMap){
+		Map<String, AlterTableParam> alterTableMap = new LinkedHashMap<String, AlterTableParam>();
+		for (Entry<String, List<Object>> entry : dropKeyTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getDropKeyFields().addAll(entry.getValue());
+		}
+		for (Entry<String, List<Object>> entry : addTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getAddFields().addAll(entry.getValue());
+		}
+		for (Entry<String, List<Object>> entry : removeTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getRemoveFields().addAll(entry.getValue());
+		}
+		for (Entry<String, List<Object>> entry : modifyTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getModifyFields().addAll(entry.getValue());
+		}
+		for (Entry<String, List<Object>> entry : dropIndexTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getDropIndexes().addAll(entry.getValue());
+		}
+		for (Entry<String, List<Object>> entry : addIndexTableMap.entrySet()){
+			getAlterTableParam(alterTableMap, entry.getKey()).getAddIndexes().addAll(entry.getValue());
+		}
+		return new ArrayList<AlterTableParam>(alterTableMap.values());
+	}
+
+	private AlterTableParam getAlterTableParam(Map<String, AlterTableParam> alterTableMap,String tableName){
+		AlterTableParam alterTableParam = alterTableMap.get(tableName);
+		if (alterTableParam == null) {
+			alterTableParam = new AlterTableParam(tableName);
+			alterTableMap.put(tableName, alterTableParam);
+		}
+		return alterTableParam;
+	}
+
+	/**
+	 * 用一条alter语句完成一张表的全部变更，innodb下每条alter都可能重建整张表，合并后只需重建一次
+	 * 执行失败时直接抛出，不再逐个字段重试：合并的语句本身没有问题时逐个执行同样会失败，并且会在中途留下只完成一部分的表结构
+	 * 
+	 * @param alterTableParam
+	 * @param snapshot
+	 *            修改前的表结构快照
+	 */
+	private void alterTableByParam(AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot){
+		String tableName = alterTableParam.getTableName();
+		checkUniqueDuplicates(alterTableParam, snapshot);
+		if ("shadow".equals(tableAuto) && shadowAlterTable(alterTableParam, snapshot)) {
+			return;
+		}
+		if ("true".equals(onlineDdl)) {
+			if (onlineAlterTable(alterTableParam)) {
+				return;
+			}
+			if (!"true".equals(onlineDdlFallback)) {
+				throw new RuntimeException("表" + tableName + "不支持online ddl，没有开启mybatis.table.onlineDdl.fallback，不执行可能阻塞读写的alter");
+			}
+			log.warn("表" + tableName + "不支持online ddl，按mybatis.table.onlineDdl.fallback的配置使用ALGORITHM=" + MySqlAlterAlgorithmConstant.DEFAULT + "修改");
+		}
+		log.info("开始修改表" + tableName + "的结构");
+		createMysqlTablesMapper.alterTable(alterTableParam);
+		log.info("完成修改表" + tableName + "的结构");
+	}
+
+	/**
+	 * 增加唯一索引前检查表中已有的数据按索引的字段是否有重复，有重复时直接报错，由使用者先清理重复的数据
+	 * 索引的字段在这次变更中才增加时不检查，这时表中还没有这个字段的数据
+	 * 
+	 * @param alterTableParam
+	 * @param snapshot
+	 *            修改前的表结构快照
+	 */
+	private void checkUniqueDuplicates(AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot){
+		String tableName = alterTableParam.getTableName();
+		Set<String> columnNames = new HashSet<String>();
+		for (SysMysqlColumns sysColumn : snapshot.getColumns(tableName)){
+			columnNames.add(sysColumn.getColumn_name());
+		}
+		for (Object obj : alterTableParam.getAddIndexes()){
+			CreateIndexParam indexParam = (CreateIndexParam) obj;
+			if (!indexParam.isIndexIsUnique() || !columnNames.containsAll(indexParam.getIndexColumns())) {
+				continue;
+			}
+			long duplicateCount = createMysqlTablesMapper.findDuplicateCount(tableName, indexParam.getIndexColumns());
+			if (duplicateCount > 0) {
+				throw new RuntimeException("表" + tableName + "的字段" + indexParam.getIndexColumns() + "有" + duplicateCount + "组重复的值，不能增加唯一索引"
+						+ indexParam.getIndexName() + "，请先清理重复的数据");
+			}
+		}
+	}
+
+	/**
+	 * 使用影子表的方式修改表结构，整个过程中原表只在最后rename时被短暂锁住：
+	 * 1. 按原表结构创建影子表，并在影子表上执行alter
+	 * 2. 在原表上创建触发器，把并发的增删改同步到影子表
+	 * 3. 按主键范围分批把原表的数据复制到影子表，每批之间可以暂停一段时间
+	 * 4. rename table原子的交换两张表，然后删除触发器和原表
+	 * 
+	 * @param alterTableParam
+	 * @param snapshot
+	 *            修改前的表结构快照
+	 * @return 表没有单一字段的主键、要变更主键或者有可能丢失数据的变更时不能使用影子表，返回false
+	 */
+	private boolean shadowAlterTable(AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot){
+		String tableName = alterTableParam.getTableName();
+		int chunkSize = getShadowChunkSize();
+		long throttle = getShadowThrottle();
+		String keyColumn = findSingleKeyColumn(snapshot, tableName);
+		if (keyColumn == null || alterTableParam.getDropKeyFields().size() > 0 || alterTableParam.getRemoveFields().contains(keyColumn)) {
+			log.warn("表" + tableName + "没有单一字段的主键或者要变更主键，不能使用影子表的方式修改");
+			return false;
+		}
+		String unsafeChange = findShadowUnsafeChange(alterTableParam, snapshot);
+		if (unsafeChange != null) {
+			// 这些变更在触发器中可能导致业务的写操作失败，或者在复制时丢失数据，直接alter时失败不会有任何变更
+			log.warn("表" + tableName + unsafeChange + "，不能使用影子表的方式修改");
+			return false;
+		}
+
+		ShadowTableParam shadow = new ShadowTableParam(tableName, keyColumn);
+		shadow.setChunkSize(chunkSize);
+		for (SysMysqlColumns sysColumn : snapshot.getColumns(tableName)){
+			if (!alterTableParam.getRemoveFields().contains(sysColumn.getColumn_name())) {
+				shadow.getColumns().add(sysColumn.getColumn_name());
+			}
+		}
+
+		// 清理上次中断时可能残留的触发器和影子表，以及交换后还没来得及删除的原表，否则rename会一直失败
+		dropShadowTriggers(shadow);
+		createMysqlTablesMapper.dorpTableByName(shadow.getShadowTableName());
+		if (snapshot.hasTable(shadow.getOldTableName())) {
+			log.warn("删除上次交换后残留的原表" + shadow.getOldTableName());
+			createMysqlTablesMapper.dorpTableByName(shadow.getOldTableName());
+		}
+
+		log.info("开始使用影子表" + shadow.getShadowTableName() + "修改表" + tableName + "的结构");
+		createMysqlTablesMapper.createShadowTable(shadow);
+		try{
+			// 1. 在影子表上执行alter
+			AlterTableParam shadowAlterTableParam = new AlterTableParam(shadow.getShadowTableName());
+			shadowAlterTableParam.setAddFields(alterTableParam.getAddFields());
+			shadowAlterTableParam.setRemoveFields(alterTableParam.getRemoveFields());
+			shadowAlterTableParam.setModifyFields(alterTableParam.getModifyFields());
+			shadowAlterTableParam.setDropIndexes(alterTableParam.getDropIndexes());
+			shadowAlterTableParam.setAddIndexes(alterTableParam.getAddIndexes());
+			createMysqlTablesMapper.alterTable(shadowAlterTableParam);
+
+			// 2. 创建同步并发修改的触发器
+			createMysqlTablesMapper.createShadowInsertTrigger(shadow);
+			createMysqlTablesMapper.createShadowUpdateTrigger(shadow);
+			createMysqlTablesMapper.createShadowDeleteTrigger(shadow);
+
+			// 3. 分批复制数据
+			copyShadowChunks(shadow, throttle);
+
+			// 4. 交换原表和影子表
+			createMysqlTablesMapper.swapShadowTable(shadow);
+		}catch (RuntimeException e){
+			log.error("使用影子表修改表" + tableName + "的结构失败，清理影子表和触发器", e);
+			dropShadowTriggers(shadow);
+			createMysqlTablesMapper.dorpTableByName(shadow.getShadowTableName());
+			throw e;
+		}
+		dropShadowTriggers(shadow);
+		createMysqlTablesMapper.dorpTableByName(shadow.getOldTableName());
+		log.info("完成使用影子表修改表" + tableName + "的结构");
+		return true;
+	}
+
+	/**
+	 * 按主键范围分批把原表的数据复制到影子表
+	 * 复制使用单独的连接并开启严格模式，数据被截断或转换时直接报错，每批之后还会检查警告，有警告时停止复制
+	 * 
+	 * @param shadow
+	 * @param throttle
+	 *            每批之间暂停的毫秒数
 	 */
-	private void removeFieldsByMap(Map<String, List<Object>> removeTableMap){
-		// 做删除字段操作
-		if (removeTableMap.size() > 0) {
-			for (Entry<String, List<Object>> entry : removeTableMap.entrySet()){
-				for (Object obj : entry.getValue()){
-					Map<String, Object> map = new HashMap<String, Object>();
-					map.put(entry.getKey(), obj);
-					String fieldName = (String) obj;
-					log.info("开始删除表" + entry.getKey() + "中的字段" + fieldName);
-					createMysqlTablesMapper.removeTableField(map);
-					log.info("完成删除表" + entry.getKey() + "中的字段" + fieldName);
+	private void copyShadowChunks(ShadowTableParam shadow,long throttle){
+		SqlSession sqlSession = sqlSessionFactory.openSession();
+		try{
+			CreateMysqlTablesMapper mapper = sqlSession.getMapper(CreateMysqlTablesMapper.class);
+			String sqlMode = mapper.findSqlMode();
+			mapper.setSqlMode(Validator.isNullOrEmpty(sqlMode) ? "STRICT_ALL_TABLES" : sqlMode + ",STRICT_ALL_TABLES");
+			try{
+				copyShadowChunks(mapper, shadow, throttle);
+			}finally{
+				// 连接会回到连接池中，恢复原来的sql_mode
+				mapper.setSqlMode(sqlMode == null ? "" : sqlMode);
+			}
+		}finally{
+			sqlSession.close();
+		}
+	}
+
+	private void copyShadowChunks(CreateMysqlTablesMapper mapper,ShadowTableParam shadow,long throttle){
+		int chunks = 0;
+		shadow.setLastKey(null);
+		Object chunkEndKey = mapper.findShadowChunkEndKey(shadow);
+		while (chunkEndKey != null){
+			shadow.setChunkEndKey(chunkEndKey);
+			mapper.copyShadowChunk(shadow);
+			int warningCount = mapper.findWarningCount();
+			if (warningCount > 0) {
+				throw new RuntimeException("复制表" + shadow.getTableName() + "主键" + shadow.getLastKey() + "到" + chunkEndKey + "的数据时产生了" + warningCount
+						+ "条警告，数据可能被截断或转换，停止复制");
+			}
+			chunks++;
+			log.debug("表" + shadow.getTableName() + "已复制到主键" + chunkEndKey);
+			shadow.setLastKey(chunkEndKey);
+			if (throttle > 0) {
+				try{
+					Thread.sleep(throttle);
+				}catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("复制表" + shadow.getTableName() + "的数据时被中断", e);
 				}
 			}
+			chunkEndKey = mapper.findShadowChunkEndKey(shadow);
 		}
+		log.info("完成复制表" + shadow.getTableName() + "的数据，共" + chunks + "批");
 	}
 
 	/**
-	 * 根据map结构对表中添加新的字段
+	 * 找出会让影子表的触发器或者复制数据失败、丢失数据的变更：
+	 * 修改字段的类型、缩短长度或小数位数、可以为null改为不可以为null，增加没有默认值的非空字段，
+	 * 以及增加唯一索引，复制期间并发写入的重复数据会被触发器的replace into覆盖掉
 	 * 
-	 * @param addTableMap
+	 * @param alterTableParam
+	 * @param snapshot
+	 * @return 没有这样的变更时返回null，否则返回变更的说明
 	 */
-	private void addFieldsByMap(Map<String, List<Object>> addTableMap){
-		// 做增加字段操作
-		if (addTableMap.size() > 0) {
-			for (Entry<String, List<Object>> entry : addTableMap.entrySet()){
-				for (Object obj : entry.getValue()){
-					Map<String, Object> map = new HashMap<String, Object>();
-					map.put(entry.getKey(), obj);
-					CreateTableParam fieldProperties = (CreateTableParam) obj;
-					log.info("开始为表" + entry.getKey() + "增加字段" + fieldProperties.getFieldName());
-					createMysqlTablesMapper.addTableField(map);
-					log.info("完成为表" + entry.getKey() + "增加字段" + fieldProperties.getFieldName());
+	private String findShadowUnsafeChange(AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot){
+		for (Object obj : alterTableParam.getAddIndexes()){
+			CreateIndexParam indexParam = (CreateIndexParam) obj;
+			if (indexParam.isIndexIsUnique()) {
+				return "要增加唯一索引" + indexParam.getIndexName();
+			}
+		}
+		for (Object obj : alterTableParam.getAddFields()){
+			CreateTableParam createTableParam = (CreateTableParam) obj;
+			if (!createTableParam.isFieldIsNull() && !createTableParam.isFieldIsAutoIncrement() && "NULL".equals(createTableParam.getFieldDefaultValue())) {
+				return "要增加没有默认值的非空字段" + createTableParam.getFieldName();
+			}
+		}
+		Map<String, SysMysqlColumns> columnMap = new HashMap<String, SysMysqlColumns>();
+		for (SysMysqlColumns sysColumn : snapshot.getColumns(alterTableParam.getTableName())){
+			columnMap.put(sysColumn.getColumn_name(), sysColumn);
+		}
+		for (Object obj : alterTableParam.getModifyFields()){
+			CreateTableParam createTableParam = (CreateTableParam) obj;
+			if (!isLosslessModify(createTableParam, columnMap.get(createTableParam.getFieldName()))) {
+				return "要修改字段" + createTableParam.getFieldName() + "的类型、缩短长度或者改为不可以为null";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 修改字段时原有的数据是否都可以不丢失的转换成新的类型
+	 * 
+	 * @param createTableParam
+	 *            model中的字段
+	 * @param sysColumn
+	 *            数据库中的字段
+	 * @return
+	 */
+	private boolean isLosslessModify(CreateTableParam createTableParam,SysMysqlColumns sysColumn){
+		if (sysColumn == null || !sysColumn.getData_type().equalsIgnoreCase(createTableParam.getFieldType())) {
+			return false;
+		}
+		String columnType = sysColumn.getColumn_type().toLowerCase();
+		if (columnType.contains("unsigned")) {
+			return false;
+		}
+		if ("YES".equals(sysColumn.getIs_nullable()) && !createTableParam.isFieldIsNull()) {
+			return false;
+		}
+		Matcher matcher = COLUMN_LENGTH_PATTERN.matcher(columnType);
+		if (!matcher.find()) {
+			return true;
+		}
+		int oldLength = Integer.parseInt(matcher.group(1));
+		int oldDecimalLength = matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2));
+		if (createTableParam.getFileTypeLength() == 1) {
+			return createTableParam.getFieldLength() >= oldLength;
+		}
+		if (createTableParam.getFileTypeLength() == 2) {
+			// 整数部分和小数部分都不能变短
+			return createTableParam.getFieldDecimalLength() >= oldDecimalLength
+					&& createTableParam.getFieldLength() - createTableParam.getFieldDecimalLength() >= oldLength - oldDecimalLength;
+		}
+		return true;
+	}
+
+	/**
+	 * 影子表方式每批复制的行数，默认1000
+	 * 
+	 * @return
+	 */
+	private int getShadowChunkSize(){
+		if (Validator.isNullOrEmpty(shadowChunkSize)) {
+			return 1000;
+		}
+		try{
+			int chunkSize = Integer.parseInt(shadowChunkSize.trim());
+			if (chunkSize > 0) {
+				return chunkSize;
+			}
+		}catch (NumberFormatException e){
+			// 在下面统一报错
+		}
+		throw new IllegalArgumentException("mybatis.table.shadow.chunkSize配置的" + shadowChunkSize + "不是有效的正整数");
+	}
+
+	/**
+	 * 影子表方式每批复制之间暂停的毫秒数，默认0
+	 * 
+	 * @return
+	 */
+	private long getShadowThrottle(){
+		if (Validator.isNullOrEmpty(shadowThrottle)) {
+			return 0;
+		}
+		try{
+			long throttle = Long.parseLong(shadowThrottle.trim());
+			if (throttle >= 0) {
+				return throttle;
+			}
+		}catch (NumberFormatException e){
+			// 在下面统一报错
+		}
+		throw new IllegalArgumentException("mybatis.table.shadow.throttle配置的" + shadowThrottle + "不是有效的毫秒数");
+	}
+
+	private void dropShadowTriggers(ShadowTableParam shadow){
+		createMysqlTablesMapper.dropTrigger(shadow.getInsertTriggerName());
+		createMysqlTablesMapper.dropTrigger(shadow.getUpdateTriggerName());
+		createMysqlTablesMapper.dropTrigger(shadow.getDeleteTriggerName());
+	}
+
+	/**
+	 * 从快照中找出表的主键字段，主键不存在或者由多个字段组成时返回null
+	 * 
+	 * @param snapshot
+	 * @param tableName
+	 * @return
+	 */
+	private String findSingleKeyColumn(SysMysqlSchemaSnapshot snapshot,String tableName){
+		String keyColumn = null;
+		for (SysMysqlStatistics statistic : snapshot.getStatistics(tableName)){
+			if (SysMysqlStatistics.PRIMARY.equals(statistic.getIndex_name())) {
+				if (keyColumn != null) {
+					return null;
 				}
+				keyColumn = statistic.getColumn_name();
 			}
 		}
+		return keyColumn;
 	}
 
 	/**
-	 * 根据map结构删除要变更表中字段的主键
+	 * 依次尝试ALGORITHM=INSTANT、ALGORITHM=INPLACE,LOCK=NONE修改表结构，mysql不支持时会直接报错而不会做任何变更
+	 * 只有ALGORITHM或LOCK不支持的错误会尝试下一种方式，其他错误(例如唯一键冲突、数据截断、锁等待超时)直接抛出
 	 * 
-	 * @param dropKeyTableMap
+	 * @param alterTableParam
+	 * @return 都不支持时返回false，由调用方决定是否不带ALGORITHM和LOCK重新执行
 	 */
-	private void dropFieldsKeyByMap(Map<String, List<Object>> dropKeyTableMap){
-		// 先去做删除主键的操作，这步操作必须在增加和修改字段之前！
-		if (dropKeyTableMap.size() > 0) {
-			for (Entry<String, List<Object>> entry : dropKeyTableMap.entrySet()){
-				for (Object obj : entry.getValue()){
-					Map<String, Object> map = new HashMap<String, Object>();
-					map.put(entry.getKey(), obj);
-					CreateTableParam fieldProperties = (CreateTableParam) obj;
-					log.info("开始为表" + entry.getKey() + "删除主键" + fieldProperties.getFieldName());
-					createMysqlTablesMapper.dropKeyTableField(map);
-					log.info("完成为表" + entry.getKey() + "删除主键" + fieldProperties.getFieldName());
+	private boolean onlineAlterTable(AlterTableParam alterTableParam){
+		String tableName = alterTableParam.getTableName();
+		List<String[]> candidates = new ArrayList<String[]>();
+		// INSTANT从mysql8.0.12开始支持，并且只能使用默认的LOCK
+		if (getMysqlVersionNumber() >= 80012) {
+			candidates.add(new String[] { MySqlAlterAlgorithmConstant.INSTANT, null });
+		}
+		candidates.add(new String[] { MySqlAlterAlgorithmConstant.INPLACE, MySqlAlterAlgorithmConstant.LOCK_NONE });
+		try{
+			for (String[] candidate : candidates){
+				alterTableParam.setAlgorithm(candidate[0]);
+				alterTableParam.setLock(candidate[1]);
+				try{
+					createMysqlTablesMapper.alterTable(alterTableParam);
+					log.info("完成修改表" + tableName + "的结构，ALGORITHM=" + candidate[0]);
+					return true;
+				}catch (RuntimeException e){
+					if (!isAlterNotSupported(e)) {
+						throw e;
+					}
+					log.info("表" + tableName + "不支持ALGORITHM=" + candidate[0] + "：" + e.getMessage());
 				}
 			}
+		}finally{
+			alterTableParam.setAlgorithm(null);
+			alterTableParam.setLock(null);
+		}
+		return false;
+	}
+
+	/**
+	 * 是否是mysql不支持指定的ALGORITHM或LOCK的错误，异常可能被mybatis和spring包装过，这里沿着cause查找SQLException
+	 * 
+	 * @param e
+	 * @return
+	 */
+	private boolean isAlterNotSupported(Throwable e){
+		for (Throwable cause = e; cause != null; cause = cause.getCause()){
+			if (cause instanceof SQLException) {
+				int errorCode = ((SQLException) cause).getErrorCode();
+				return errorCode == MySqlAlterAlgorithmConstant.ER_ALTER_OPERATION_NOT_SUPPORTED
+						|| errorCode == MySqlAlterAlgorithmConstant.ER_ALTER_OPERATION_NOT_SUPPORTED_REASON;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 把mysql的版本转成数字方便比较，例如8.0.26-log转成80026，无法解析的部分按0处理
+	 * 
+	 * @return
+	 */
+	private int getMysqlVersionNumber(){
+		if (Validator.isNullOrEmpty(mysqlVersion)) {
+			return 0;
+		}
+		String[] parts = mysqlVersion.split("[^0-9]+");
+		int number = 0;
+		for (int i = 0; i < 3; i++){
+			int part = 0;
+			if (i < parts.length && Validator.isNotNullOrEmpty(parts[i])) {
+				part = Integer.parseInt(parts[i]);
+			}
+			number = number * 100 + part;
 		}
+		return number;
 	}
 
 	/**
 	 * 根据map结构创建表
 	 * 
 	 * @param newTableMap
+	 * @param newIndexTableMap
 	 */
-	private void createTableByMap(Map<String, List<Object>> newTableMap){
+	private void createTableByMap(Map<String, List<Object>> newTableMap,Map<String, List<Object>> newIndexTableMap){
 		// 做创建表操作
 		if (newTableMap.size() > 0) {
 			for (Entry<String, List<Object>> entry : newTableMap.entrySet()){
-				Map<String, List<Object>> map = new HashMap<String, List<Object>>();
-				map.put(entry.getKey(), entry.getValue());
-				log.info("开始创建表：" + entry.getKey());
-				createMysqlTablesMapper.createTable(map);
-				log.info("完成创建表：" + entry.getKey());
+				createTable(entry.getKey(), entry.getValue(), newIndexTableMap.get(entry.getKey()));
 			}
 		}
 	}
 
+	/**
+	 * 创建一张表
+	 * 
+	 * @param tableName
+	 * @param fields
+	 * @param indexes
+	 *            同时创建的索引，可以为null
+	 */
+	private void createTable(String tableName,List<Object> fields,List<Object> indexes){
+		Map<String, List<Object>> map = new HashMap<String, List<Object>>();
+		map.put(tableName, fields);
+		Map<String, List<Object>> indexMap = new HashMap<String, List<Object>>();
+		if (indexes != null) {
+			indexMap.put(tableName, indexes);
+		}
+		log.info("开始创建表：" + tableName);
+		createMysqlTablesMapper.createTable(map, indexMap);
+		log.info("完成创建表：" + tableName);
+	}
+
 	/**
 	 * 获取Mysql的类型，以及类型需要设置几个长度，这里构建成map的样式 构建Map(字段名(小写),需要设置几个长度(0表示不需要设置，1表示需要设置一个，2表示需要设置两个))
 	 */
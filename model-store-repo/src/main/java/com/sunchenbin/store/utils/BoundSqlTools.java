@@ -0,0 +1,66 @@
+package com.sunchenbin.store.utils;
+
+import java.util.List;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 把mapper中的语句渲染成可以直接执行的sql文本，用于输出执行计划等不实际执行sql的场合
+ */
+public class BoundSqlTools{
+
+	/**
+	 * 按传入的参数渲染语句，占位符?会被替换成参数的字面值
+	 *
+	 * @param configuration
+	 * @param statementId
+	 *            完整的语句id，namespace.id
+	 * @param parameter
+	 *            与调用mapper方法时相同的参数，使用@Param时是参数名到参数值的map
+	 * @return
+	 */
+	public static String render(Configuration configuration,String statementId,Object parameter){
+		BoundSql boundSql = configuration.getMappedStatement(statementId).getBoundSql(parameter);
+		List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+		MetaObject metaObject = parameter == null ? null : configuration.newMetaObject(parameter);
+		String sql = boundSql.getSql();
+		StringBuilder sb = new StringBuilder(sql.length());
+		int index = 0;
+		for (int i = 0; i < sql.length(); i++){
+			char c = sql.charAt(i);
+			if (c == '?' && index < parameterMappings.size()) {
+				String property = parameterMappings.get(index++).getProperty();
+				Object value;
+				if (boundSql.hasAdditionalParameter(property)) {
+					value = boundSql.getAdditionalParameter(property);
+				}else{
+					value = metaObject == null ? null : metaObject.getValue(property);
+				}
+				sb.append(literal(value));
+			}else{
+				sb.append(c);
+			}
+		}
+		// 合并多余的空白，方便阅读
+		return sb.toString().replaceAll("\\s+", " ").trim();
+	}
+
+	/**
+	 * 转换成sql中的字面值
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static String literal(Object value){
+		if (value == null) {
+			return "NULL";
+		}
+		if (value instanceof Number || value instanceof Boolean) {
+			return value.toString();
+		}
+		return "'" + value.toString().replace("\\", "\\\\").replace("'", "''") + "'";
+	}
+}
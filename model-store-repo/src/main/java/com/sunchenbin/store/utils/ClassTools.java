@@ -3,118 +3,219 @@ package com.sunchenbin.store.utils;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+
 
 /**
  * 通过包名获取class
  *
  * @author sunchenbin
- * @version 2016年6月23日 下午5:55:18 
+ * @version 2016年6月23日 下午5:55:18
  */
 public class ClassTools{
 
 	/**
 	 * 从包package中获取所有的Class
-	 * 
+	 *
 	 * @param pack
 	 * @return
 	 */
 	public static Set<Class<?>> getClasses(String pack){
+		return getClasses(pack, null);
+	}
+
+	/**
+	 * 从包package中获取有指定注解的Class
+	 * 先直接读取.class文件的字节码判断是否有该注解，只有符合条件的类才会被加载，其他的类不会被加载和链接
+	 *
+	 * @param pack
+	 * @param annotation
+	 *            为null时返回包中所有的Class
+	 * @return
+	 */
+	public static Set<Class<?>> getClasses(String pack,final Class<? extends Annotation> annotation){
 
-		// 第一个class类的集合
-		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
 		// 是否循环迭代
-		boolean recursive = true;
+		final boolean recursive = true;
 		// 获取包的名字 并进行替换
-		String packageName = pack;
-		String packageDirName = packageName.replace('.', '/');
-		// 定义一个枚举的集合 并进行循环来处理这个目录下的things
-		Enumeration<URL> dirs;
+		final String packageName = pack;
+		final String packageDirName = packageName.replace('.', '/');
+		// 类的定义统一使用调用线程的classLoader，扫描的线程只读取文件
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		final MetadataReaderFactory metadataReaderFactory = annotation == null ? null : new SimpleMetadataReaderFactory(classLoader);
+
+		// 包可能分布在多个jar包和目录中，每个位置作为一个扫描任务
+		List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>();
 		try{
-			dirs = Thread.currentThread().getContextClassLoader().getResources(packageDirName);
+			Enumeration<URL> dirs = classLoader.getResources(packageDirName);
 			// 循环迭代下去
 			while (dirs.hasMoreElements()){
 				// 获取下一个元素
-				URL url = dirs.nextElement();
-				// 得到协议的名称
-				String protocol = url.getProtocol();
-				// 如果是以文件的形式保存在服务器上
-				if ("file".equals(protocol)) {
-					System.err.println("file类型的扫描");
-					// 获取包的物理路径
-					String filePath = URLDecoder.decode(url.getFile(), "UTF-8");
-					// 以文件的方式扫描整个包下的文件 并添加到集合中
-					findAndAddClassesInPackageByFile(packageName, filePath, recursive, classes);
-				}else if ("jar".equals(protocol)) {
-					// 如果是jar包文件
-					// 定义一个JarFile
-					System.err.println("jar类型的扫描");
-					JarFile jar;
-					try{
-						// 获取jar
-						jar = ((JarURLConnection) url.openConnection()).getJarFile();
-						// 从此jar包 得到一个枚举类
-						Enumeration<JarEntry> entries = jar.entries();
-						// 同样的进行循环迭代
-						while (entries.hasMoreElements()){
-							// 获取jar里的一个实体 可以是目录 和一些jar包里的其他文件 如META-INF等文件
-							JarEntry entry = entries.nextElement();
-							String name = entry.getName();
-							// 如果是以/开头的
-							if (name.charAt(0) == '/') {
-								// 获取后面的字符串
-								name = name.substring(1);
-							}
-							// 如果前半部分和定义的包名相同
-							if (name.startsWith(packageDirName)) {
-								int idx = name.lastIndexOf('/');
-								// 如果以"/"结尾 是一个包
-								if (idx != -1) {
-									// 获取包名 把"/"替换成"."
-									packageName = name.substring(0, idx).replace('/', '.');
-								}
-								// 如果可以迭代下去 并且是一个包
-								if ((idx != -1) || recursive) {
-									// 如果是一个.class文件 而且不是目录
-									if (name.endsWith(".class") && !entry.isDirectory()) {
-										// 去掉后面的".class" 获取真正的类名
-										String className = name.substring(packageName.length() + 1, name.length() - 6);
-										try{
-											// 添加到classes
-											classes.add(Class.forName(packageName + '.' + className));
-										}catch (ClassNotFoundException e){
-											// log
-											// .error("添加用户自定义视图类错误 找不到此类的.class文件");
-											e.printStackTrace();
-										}
-									}
-								}
-							}
-						}
-					}catch (IOException e){
-						// log.error("在扫描用户定义视图时从jar包获取文件出错");
-						e.printStackTrace();
+				final URL url = dirs.nextElement();
+				tasks.add(new Callable<Set<String>>(){
+
+					public Set<String> call() throws Exception{
+						return findClassNames(url, packageName, packageDirName, recursive, annotation, metadataReaderFactory);
 					}
-				}
+				});
 			}
 		}catch (IOException e){
 			e.printStackTrace();
 		}
 
-		return classes;
+		// 包中符合条件的类名，按getResources返回的顺序合并，保证每次扫描的顺序一致
+		Set<String> classNames = new LinkedHashSet<String>();
+		for (Set<String> names : executeTasks(tasks)){
+			classNames.addAll(names);
+		}
+		return loadClasses(classNames, classLoader);
+	}
+
+	/**
+	 * 执行扫描任务，多于一个时并行执行
+	 *
+	 * @param tasks
+	 * @return 与tasks顺序一致的扫描结果
+	 */
+	private static List<Set<String>> executeTasks(List<Callable<Set<String>>> tasks){
+		List<Set<String>> results = new ArrayList<Set<String>>();
+		if (tasks.size() == 1) {
+			try{
+				results.add(tasks.get(0).call());
+			}catch (Exception e){
+				e.printStackTrace();
+			}
+			return results;
+		}
+		if (tasks.isEmpty()) {
+			return results;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+		try{
+			for (Future<Set<String>> future : executor.invokeAll(tasks)){
+				try{
+					results.add(future.get());
+				}catch (ExecutionException e){
+					e.getCause().printStackTrace();
+				}
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}finally{
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * 扫描一个位置(目录或者jar包)中包下的类名，传入注解时先读取字节码判断，只保留有该注解的类
+	 *
+	 * @param url
+	 * @param packageName
+	 * @param packageDirName
+	 * @param recursive
+	 * @param annotation
+	 * @param metadataReaderFactory
+	 * @return
+	 * @throws IOException
+	 */
+	private static Set<String> findClassNames(
+			URL url,
+			String packageName,
+			String packageDirName,
+			boolean recursive,
+			Class<? extends Annotation> annotation,
+			MetadataReaderFactory metadataReaderFactory) throws IOException{
+		Set<String> classNames = new LinkedHashSet<String>();
+		// 得到协议的名称
+		String protocol = url.getProtocol();
+		// 如果是以文件的形式保存在服务器上
+		if ("file".equals(protocol)) {
+			System.err.println("file类型的扫描");
+			// 获取包的物理路径
+			String filePath = URLDecoder.decode(url.getFile(), "UTF-8");
+			// 以文件的方式扫描整个包下的文件 并添加到集合中
+			findClassNamesInPackageByFile(packageName, filePath, recursive, classNames);
+		}else if ("jar".equals(protocol)) {
+			// 如果是jar包文件
+			System.err.println("jar类型的扫描");
+			// 获取jar
+			JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+			findClassNamesInJar(jar, packageDirName, recursive, classNames);
+		}
+		if (annotation == null) {
+			return classNames;
+		}
+		Set<String> annotatedClassNames = new LinkedHashSet<String>();
+		for (String className : classNames){
+			try{
+				if (hasAnnotation(metadataReaderFactory, className, annotation)) {
+					annotatedClassNames.add(className);
+				}
+			}catch (IOException e){
+				e.printStackTrace();
+			}
+		}
+		return annotatedClassNames;
+	}
+
+	/**
+	 * 从jar包中获取包下所有的类名
+	 *
+	 * @param jar
+	 * @param packageDirName
+	 *            包名对应的路径，例如com/sunchenbin/store/model
+	 * @param recursive
+	 * @param classNames
+	 */
+	private static void findClassNamesInJar(JarFile jar,String packageDirName,boolean recursive,Set<String> classNames){
+		// 从此jar包 得到一个枚举类
+		Enumeration<JarEntry> entries = jar.entries();
+		// 同样的进行循环迭代
+		while (entries.hasMoreElements()){
+			// 获取jar里的一个实体 可以是目录 和一些jar包里的其他文件 如META-INF等文件
+			JarEntry entry = entries.nextElement();
+			String name = entry.getName();
+			// 如果是以/开头的
+			if (name.charAt(0) == '/') {
+				// 获取后面的字符串
+				name = name.substring(1);
+			}
+			// 如果前半部分和定义的包名相同，并且是一个.class文件 而且不是目录
+			if (name.startsWith(packageDirName) && name.endsWith(".class") && !entry.isDirectory()) {
+				// 不迭代子包时，只要直接在该包下的类
+				if (!recursive && name.lastIndexOf('/') != packageDirName.length()) {
+					continue;
+				}
+				// 去掉后面的".class" 把"/"替换成"." 获取真正的类名
+				classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+			}
+		}
 	}
 
 	/**
 	 * 以文件的形式来获取包下的所有Class
-	 * 
+	 *
 	 * @param packageName
 	 * @param packagePath
 	 * @param recursive
@@ -125,6 +226,24 @@ public class ClassTools{
 			String packagePath,
 			final boolean recursive,
 			Set<Class<?>> classes){
+		Set<String> classNames = new LinkedHashSet<String>();
+		findClassNamesInPackageByFile(packageName, packagePath, recursive, classNames);
+		classes.addAll(loadClasses(classNames, Thread.currentThread().getContextClassLoader()));
+	}
+
+	/**
+	 * 以文件的形式来获取包下的所有类名
+	 *
+	 * @param packageName
+	 * @param packagePath
+	 * @param recursive
+	 * @param classNames
+	 */
+	private static void findClassNamesInPackageByFile(
+			String packageName,
+			String packagePath,
+			final boolean recursive,
+			Set<String> classNames){
 		// 获取此包的目录 建立一个File
 		File dir = new File(packagePath);
 		// 如果不存在或者 也不是目录就直接返回
@@ -144,21 +263,61 @@ public class ClassTools{
 		for (File file : dirfiles){
 			// 如果是目录 则继续扫描
 			if (file.isDirectory()) {
-				findAndAddClassesInPackageByFile(packageName + "." + file.getName(), file.getAbsolutePath(), recursive, classes);
+				findClassNamesInPackageByFile(packageName + "." + file.getName(), file.getAbsolutePath(), recursive, classNames);
 			}else{
 				// 如果是java类文件 去掉后面的.class 只留下类名
 				String className = file.getName().substring(0, file.getName().length() - 6);
-				try{
-					// 添加到集合中去
-					// classes.add(Class.forName(packageName + '.' +
-					// className));
-					// 经过回复同学的提醒，这里用forName有一些不好，会触发static方法，没有使用classLoader的load干净
-					classes.add(Thread.currentThread().getContextClassLoader().loadClass(packageName + '.' + className));
-				}catch (ClassNotFoundException e){
-					// log.error("添加用户自定义视图类错误 找不到此类的.class文件");
-					e.printStackTrace();
-				}
+				classNames.add(packageName + '.' + className);
+			}
+		}
+	}
+
+	/**
+	 * 加载类
+	 *
+	 * @param classNames
+	 * @param classLoader
+	 * @return
+	 */
+	private static Set<Class<?>> loadClasses(Set<String> classNames,ClassLoader classLoader){
+		Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+		for (String className : classNames){
+			try{
+				// 添加到集合中去
+				// 这里用forName有一些不好，会触发static方法，没有使用classLoader的load干净
+				classes.add(classLoader.loadClass(className));
+			}catch (ClassNotFoundException e){
+				// log.error("添加用户自定义视图类错误 找不到此类的.class文件");
+				e.printStackTrace();
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * 通过字节码判断类上是否有指定的注解，不会加载该类
+	 * 注解标记了@Inherited时，继续判断父类
+	 *
+	 * @param metadataReaderFactory
+	 * @param className
+	 * @param annotation
+	 * @return
+	 * @throws IOException
+	 */
+	private static boolean hasAnnotation(MetadataReaderFactory metadataReaderFactory,String className,Class<? extends Annotation> annotation)
+			throws IOException{
+		boolean inherited = annotation.isAnnotationPresent(Inherited.class);
+		String currentClassName = className;
+		while (currentClassName != null && !Object.class.getName().equals(currentClassName)){
+			MetadataReader metadataReader = metadataReaderFactory.getMetadataReader(currentClassName);
+			if (metadataReader.getAnnotationMetadata().hasAnnotation(annotation.getName())) {
+				return true;
+			}
+			if (!inherited || metadataReader.getClassMetadata().isInterface()) {
+				return false;
 			}
+			currentClassName = metadataReader.getClassMetadata().getSuperClassName();
 		}
+		return false;
 	}
 }
@@ -0,0 +1,104 @@
+package com.sunchenbin.store.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+
+import org.springframework.cglib.reflect.FastMethod;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.feilong.core.lang.reflect.ReflectException;
+
+/**
+ * model中一个标记了@Column的字段的元数据，构建时已经设置好访问权限，可以直接读写字段的值
+ * 有public的getter/setter时通过cglib生成的FastClass按方法下标直接调用，没有时退回到Field反射读写
+ */
+public class EntityColumn{
+
+	private final Field		field;
+
+	private final Column	column;
+
+	/**
+	 * 生成的getter调用，为null时使用field读取
+	 */
+	private final FastMethod	getter;
+
+	/**
+	 * 生成的setter调用，为null时使用field设置
+	 */
+	private final FastMethod	setter;
+
+	public EntityColumn(Field field, Column column, FastMethod getter, FastMethod setter){
+		// 私有属性需要设置访问权限，只在构建时设置一次
+		field.setAccessible(true);
+		this.field = field;
+		this.column = column;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	/**
+	 * 读取对象中该字段的值
+	 *
+	 * @param obj
+	 * @return
+	 */
+	public Object getValue(Object obj){
+		try{
+			if (getter != null) {
+				return getter.invoke(obj, null);
+			}
+			return field.get(obj);
+		}catch (InvocationTargetException e){
+			throw new ReflectException("读取字段" + field.getName() + "失败", e.getTargetException());
+		}catch (IllegalAccessException e){
+			throw new ReflectException("读取字段" + field.getName() + "失败", e);
+		}
+	}
+
+	/**
+	 * 设置对象中该字段的值
+	 *
+	 * @param obj
+	 * @param value
+	 */
+	public void setValue(Object obj,Object value){
+		try{
+			if (setter != null) {
+				setter.invoke(obj, new Object[] { value });
+			}else{
+				field.set(obj, value);
+			}
+		}catch (InvocationTargetException e){
+			throw new ReflectException("设置字段" + field.getName() + "失败", e.getTargetException());
+		}catch (IllegalAccessException e){
+			throw new ReflectException("设置字段" + field.getName() + "失败", e);
+		}
+	}
+
+	/**
+	 * 表中的字段名
+	 *
+	 * @return
+	 */
+	public String getName(){
+		return column.name();
+	}
+
+	public boolean isKey(){
+		return column.isKey();
+	}
+
+	public boolean isAutoIncrement(){
+		return column.isAutoIncrement();
+	}
+
+	public Field getField(){
+		return field;
+	}
+
+	public Column getColumn(){
+		return column;
+	}
+
+}
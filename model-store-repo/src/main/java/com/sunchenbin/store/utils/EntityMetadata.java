@@ -0,0 +1,244 @@
+package com.sunchenbin.store.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.cglib.reflect.FastMethod;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.feilong.core.lang.reflect.ReflectException;
+import com.sunchenbin.store.feilong.core.util.Validator;
+
+/**
+ * model类的表结构元数据：表名、字段、主键字段、自增字段
+ * 每个类只在第一次使用时通过反射解析一次，之后从缓存中取
+ */
+public class EntityMetadata{
+
+	private static final Logger										log		= LoggerFactory.getLogger(EntityMetadata.class);
+
+	/**
+	 * 类和元数据的对应关系
+	 */
+	private static final ConcurrentMap<Class<?>, EntityMetadata>	CACHE	= new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	private final Class<?>											entityClass;
+
+	private final Table												table;
+
+	private final String											tableName;
+
+	/**
+	 * 全部的字段，先是类本身按声明顺序的字段，然后依次是父类、祖父类的字段
+	 */
+	private final List<EntityColumn>								columns;
+
+	/**
+	 * 主键字段
+	 */
+	private final List<EntityColumn>								keyColumns;
+
+	/**
+	 * 自增字段
+	 */
+	private final List<EntityColumn>								autoIncrementColumns;
+
+	/**
+	 * 字段名和字段的对应关系
+	 */
+	private final Map<String, EntityColumn>							columnMap;
+
+	private EntityMetadata(Class<?> entityClass, Table table, List<EntityColumn> columns){
+		this.entityClass = entityClass;
+		this.table = table;
+		this.tableName = table.name();
+		List<EntityColumn> keyColumns = new ArrayList<EntityColumn>();
+		List<EntityColumn> autoIncrementColumns = new ArrayList<EntityColumn>();
+		Map<String, EntityColumn> columnMap = new LinkedHashMap<String, EntityColumn>();
+		for (EntityColumn column : columns){
+			if (column.isKey()) {
+				keyColumns.add(column);
+			}
+			if (column.isAutoIncrement()) {
+				autoIncrementColumns.add(column);
+			}
+			columnMap.put(column.getName(), column);
+		}
+		this.columns = Collections.unmodifiableList(columns);
+		this.keyColumns = Collections.unmodifiableList(keyColumns);
+		this.autoIncrementColumns = Collections.unmodifiableList(autoIncrementColumns);
+		this.columnMap = Collections.unmodifiableMap(columnMap);
+	}
+
+	/**
+	 * 取得类的元数据
+	 *
+	 * @param entityClass
+	 * @return 类上没有@Table注解或者没有设置表名时返回null
+	 */
+	public static EntityMetadata forClass(Class<?> entityClass){
+		EntityMetadata metadata = CACHE.get(entityClass);
+		if (metadata != null) {
+			return metadata;
+		}
+		Table table = entityClass.getAnnotation(Table.class);
+		if (Validator.isNullOrEmpty(table) || Validator.isNullOrEmpty(table.name())) {
+			return null;
+		}
+		FastClass fastClass = createFastClass(entityClass);
+		List<EntityColumn> columns = new ArrayList<EntityColumn>();
+		Set<String> columnNames = new HashSet<String>();
+		// 沿继承链向上合并所有的字段，子类和父类配置了相同的字段名时以子类为准
+		for (Class<?> clas = entityClass; clas != null && clas != Object.class; clas = clas.getSuperclass()){
+			for (Field field : clas.getDeclaredFields()){
+				Column column = field.getAnnotation(Column.class);
+				if (column != null && columnNames.add(column.name())) {
+					columns.add(new EntityColumn(field, column, findGetter(fastClass, field), findSetter(fastClass, field)));
+				}
+			}
+		}
+		metadata = new EntityMetadata(entityClass, table, columns);
+		EntityMetadata existing = CACHE.putIfAbsent(entityClass, metadata);
+		return existing == null ? metadata : existing;
+	}
+
+	/**
+	 * 为model类生成FastClass，方法按下标直接调用，不再经过反射
+	 * 注意：有public的getter/setter的字段读写时调用的是getter/setter，而不是直接读写字段，
+	 * getter/setter中有额外逻辑(例如转换、校验、懒加载)的model，保存和查询的结果会受这些逻辑影响
+	 *
+	 * @param entityClass
+	 * @return 不是public的类或者生成失败时返回null，这时全部字段都直接通过反射读写
+	 */
+	private static FastClass createFastClass(Class<?> entityClass){
+		if (!Modifier.isPublic(entityClass.getModifiers())) {
+			return null;
+		}
+		try{
+			return FastClass.create(entityClass.getClassLoader(), entityClass);
+		}catch (RuntimeException e){
+			log.warn("生成" + entityClass.getName() + "的FastClass失败，改为通过反射读写字段", e);
+			return null;
+		}
+	}
+
+	/**
+	 * 查找字段的getter，boolean类型的字段也会查找isXxx
+	 *
+	 * @param fastClass
+	 * @param field
+	 * @return 没有public的getter时返回null
+	 */
+	private static FastMethod findGetter(FastClass fastClass,Field field){
+		if (fastClass == null) {
+			return null;
+		}
+		String name = capitalize(field.getName());
+		// 在model类上查找，父类的getter被子类重写时使用子类的
+		Method method = findMethod(fastClass.getJavaClass(), "get" + name);
+		if (method == null && (field.getType() == boolean.class || field.getType() == Boolean.class)) {
+			method = findMethod(fastClass.getJavaClass(), "is" + name);
+		}
+		if (method == null || !field.getType().isAssignableFrom(method.getReturnType())) {
+			return null;
+		}
+		return fastClass.getMethod(method);
+	}
+
+	/**
+	 * 查找字段的setter，参数类型必须和字段类型一致
+	 *
+	 * @param fastClass
+	 * @param field
+	 * @return 没有public的setter时返回null
+	 */
+	private static FastMethod findSetter(FastClass fastClass,Field field){
+		if (fastClass == null) {
+			return null;
+		}
+		Method method = findMethod(fastClass.getJavaClass(), "set" + capitalize(field.getName()), field.getType());
+		return method == null ? null : fastClass.getMethod(method);
+	}
+
+	private static Method findMethod(Class<?> clazz,String name,Class<?>...parameterTypes){
+		try{
+			Method method = clazz.getMethod(name, parameterTypes);
+			return Modifier.isStatic(method.getModifiers()) ? null : method;
+		}catch (NoSuchMethodException e){
+			return null;
+		}
+	}
+
+	private static String capitalize(String name){
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	/**
+	 * 创建一个新的model对象
+	 *
+	 * @return
+	 */
+	public Object newInstance(){
+		try{
+			return entityClass.newInstance();
+		}catch (InstantiationException e){
+			throw new ReflectException("创建" + entityClass.getName() + "的实例失败", e);
+		}catch (IllegalAccessException e){
+			throw new ReflectException("创建" + entityClass.getName() + "的实例失败", e);
+		}
+	}
+
+	/**
+	 * 根据表中的字段名取得字段
+	 *
+	 * @param name
+	 * @return 不存在时返回null
+	 */
+	public EntityColumn getColumn(String name){
+		return columnMap.get(name);
+	}
+
+	public Class<?> getEntityClass(){
+		return entityClass;
+	}
+
+	/**
+	 * 类上的@Table注解
+	 *
+	 * @return
+	 */
+	public Table getTable(){
+		return table;
+	}
+
+	public String getTableName(){
+		return tableName;
+	}
+
+	public List<EntityColumn> getColumns(){
+		return columns;
+	}
+
+	public List<EntityColumn> getKeyColumns(){
+		return keyColumns;
+	}
+
+	public List<EntityColumn> getAutoIncrementColumns(){
+		return autoIncrementColumns;
+	}
+
+}
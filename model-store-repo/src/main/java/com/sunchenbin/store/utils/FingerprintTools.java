@@ -0,0 +1,100 @@
+package com.sunchenbin.store.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import com.sunchenbin.store.command.CreateIndexParam;
+import com.sunchenbin.store.command.CreateTableParam;
+import com.sunchenbin.store.command.SysMysqlColumns;
+import com.sunchenbin.store.command.SysMysqlStatistics;
+
+/**
+ * 计算表结构的指纹，用于判断model和数据库中的表结构自上次同步后是否发生过变化
+ */
+public class FingerprintTools{
+
+	/**
+	 * 计算model解析出来的字段和索引结构的指纹
+	 *
+	 * @param fieldList
+	 *            CreateTableParam的list，顺序即建表时字段的顺序
+	 * @param indexList
+	 *            CreateIndexParam的list
+	 * @return
+	 */
+	public static String modelFingerprint(List<Object> fieldList,List<Object> indexList){
+		StringBuilder sb = new StringBuilder();
+		for (Object obj : fieldList){
+			CreateTableParam param = (CreateTableParam) obj;
+			sb.append(param.getFieldName()).append('|');
+			sb.append(param.getFieldType()).append('|');
+			sb.append(param.getFieldLength()).append('|');
+			sb.append(param.getFieldDecimalLength()).append('|');
+			sb.append(param.isFieldIsNull()).append('|');
+			sb.append(param.isFieldIsKey()).append('|');
+			sb.append(param.isFieldIsAutoIncrement()).append('|');
+			sb.append(param.getFieldDefaultValue()).append('|');
+			sb.append(param.getFileTypeLength()).append('\n');
+		}
+		for (Object obj : indexList){
+			CreateIndexParam param = (CreateIndexParam) obj;
+			sb.append(param.getIndexName()).append('|');
+			sb.append(param.isIndexIsUnique()).append('|');
+			sb.append(param.getIndexColumns()).append('\n');
+		}
+		return md5(sb.toString());
+	}
+
+	/**
+	 * 计算数据库中表结构的指纹
+	 *
+	 * @param columns
+	 *            information_schema.columns中该表的字段
+	 * @param statistics
+	 *            information_schema.statistics中该表的索引
+	 * @return
+	 */
+	public static String tableFingerprint(List<SysMysqlColumns> columns,List<SysMysqlStatistics> statistics){
+		StringBuilder sb = new StringBuilder();
+		for (SysMysqlColumns column : columns){
+			sb.append(column.getColumn_name()).append('|');
+			sb.append(column.getColumn_type()).append('|');
+			sb.append(column.getIs_nullable()).append('|');
+			sb.append(column.getColumn_default()).append('|');
+			sb.append(column.getColumn_key()).append('|');
+			sb.append(column.getExtra()).append('\n');
+		}
+		for (SysMysqlStatistics statistic : statistics){
+			sb.append(statistic.getIndex_name()).append('|');
+			sb.append(statistic.getNon_unique()).append('|');
+			sb.append(statistic.getSeq_in_index()).append('|');
+			sb.append(statistic.getColumn_name()).append('|');
+			sb.append(statistic.getSub_part()).append('\n');
+		}
+		return md5(sb.toString());
+	}
+
+	/**
+	 * 计算字符串的md5，返回32位小写的16进制字符串
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static String md5(String value){
+		try{
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest){
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		}catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}catch (UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+	}
+}
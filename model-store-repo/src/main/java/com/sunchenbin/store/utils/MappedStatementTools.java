@@ -0,0 +1,379 @@
+package com.sunchenbin.store.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+
+import com.sunchenbin.store.command.EntityRowParam;
+
+/**
+ * 根据model的元数据在mybatis中注册专用的ResultMap和语句，查询结果直接映射成model对象，不再经过HashMap
+ * 单条数据的增删改查每个model每种操作注册一条语句，按使用的字段生成静态sql，参数按位置从EntityRowParam中取，执行时不再解析动态sql
+ */
+public class MappedStatementTools{
+
+	/**
+	 * 已经注册到Configuration中的语句，Configuration中的map是HashMap，
+	 * 和注册同时读取不是线程安全的，判断是否已经注册时只读这里，注册时对configuration加锁
+	 */
+	private static final ConcurrentMap<String, MappedStatement> STATEMENTS = new ConcurrentHashMap<String, MappedStatement>();
+
+	/**
+	 * 取得按model映射结果的语句，不存在时以statementId的语句为模板注册
+	 * 除了结果映射外，sql、fetchSize、resultSetType等都和模板语句相同
+	 *
+	 * @param configuration
+	 * @param statementId
+	 *            模板语句的完整id，namespace.id
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	public static String getEntityStatementId(Configuration configuration,String statementId,EntityMetadata metadata){
+		String id = statementId + "_" + entitySuffix(metadata);
+		if (isRegistered(configuration, id)) {
+			return id;
+		}
+		// Configuration中的map不是线程安全的，注册时加锁
+		synchronized (configuration){
+			if (isRegistered(configuration, id)) {
+				return id;
+			}
+			ResultMap resultMap = getEntityResultMap(configuration, statementId.substring(0, statementId.lastIndexOf('.')), metadata);
+			MappedStatement template = configuration.getMappedStatement(statementId, false);
+			MappedStatement.Builder builder = new MappedStatement.Builder(configuration, id, template.getSqlSource(), template.getSqlCommandType());
+			builder.resource(template.getResource());
+			builder.parameterMap(template.getParameterMap());
+			builder.resultMaps(Collections.singletonList(resultMap));
+			builder.fetchSize(template.getFetchSize());
+			builder.timeout(template.getTimeout());
+			builder.statementType(template.getStatementType());
+			builder.resultSetType(template.getResultSetType());
+			builder.cache(template.getCache());
+			builder.flushCacheRequired(template.isFlushCacheRequired());
+			builder.useCache(template.isUseCache());
+			builder.resultOrdered(template.isResultOrdered());
+			builder.keyGenerator(template.getKeyGenerator());
+			builder.keyProperty(join(template.getKeyProperties()));
+			builder.keyColumn(join(template.getKeyColumns()));
+			builder.databaseId(template.getDatabaseId());
+			builder.lang(template.getLang());
+			builder.resultSets(join(template.getResultSets()));
+			addMappedStatement(configuration, builder.build());
+		}
+		return id;
+	}
+
+	/**
+	 * 语句是否已经注册到这个Configuration中，不读取Configuration中的map
+	 *
+	 * @param configuration
+	 * @param id
+	 * @return
+	 */
+	private static boolean isRegistered(Configuration configuration,String id){
+		MappedStatement statement = STATEMENTS.get(id);
+		return statement != null && statement.getConfiguration() == configuration;
+	}
+
+	/**
+	 * 注册语句，调用方需要持有configuration的锁
+	 *
+	 * @param configuration
+	 * @param statement
+	 */
+	private static void addMappedStatement(Configuration configuration,MappedStatement statement){
+		if (!configuration.hasStatement(statement.getId(), false)) {
+			configuration.addMappedStatement(statement);
+		}
+		STATEMENTS.put(statement.getId(), configuration.getMappedStatement(statement.getId(), false));
+	}
+
+	/**
+	 * 取得model的insert语句，insert的字段放在EntityRowParam的columns中，字段值按顺序放在values中，
+	 * 生成的自增主键设置到generatedKey中
+	 *
+	 * @param configuration
+	 * @param namespace
+	 *            语句所属的namespace
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	public static String getInsertStatementId(Configuration configuration,String namespace,EntityMetadata metadata){
+		return getRowStatementId(configuration, namespace + ".insert_" + entitySuffix(metadata), SqlCommandType.INSERT, metadata);
+	}
+
+	/**
+	 * 取得model的update语句，set的字段和值放在EntityRowParam的columns和values中，条件的字段和值放在whereColumns和keyValues中
+	 *
+	 * @param configuration
+	 * @param namespace
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	public static String getUpdateStatementId(Configuration configuration,String namespace,EntityMetadata metadata){
+		return getRowStatementId(configuration, namespace + ".update_" + entitySuffix(metadata), SqlCommandType.UPDATE, metadata);
+	}
+
+	/**
+	 * 取得model的delete语句，条件的字段和值放在EntityRowParam的whereColumns和values中
+	 *
+	 * @param configuration
+	 * @param namespace
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	public static String getDeleteStatementId(Configuration configuration,String namespace,EntityMetadata metadata){
+		return getRowStatementId(configuration, namespace + ".delete_" + entitySuffix(metadata), SqlCommandType.DELETE, metadata);
+	}
+
+	/**
+	 * 取得model的select语句，条件的字段和值放在EntityRowParam的whereColumns和values中，结果直接映射成model对象
+	 *
+	 * @param configuration
+	 * @param namespace
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	public static String getSelectStatementId(Configuration configuration,String namespace,EntityMetadata metadata){
+		return getRowStatementId(configuration, namespace + ".select_" + entitySuffix(metadata), SqlCommandType.SELECT, metadata);
+	}
+
+	/**
+	 * 取得单条数据增删改查的语句，每个model每种操作只注册一条，
+	 * 执行时由EntitySqlSource按EntityRowParam中使用的字段生成sql，不会为每种字段组合注册新的语句
+	 *
+	 * @param configuration
+	 * @param id
+	 * @param sqlCommandType
+	 * @param metadata
+	 * @return 注册后的语句id
+	 */
+	private static String getRowStatementId(Configuration configuration,String id,SqlCommandType sqlCommandType,EntityMetadata metadata){
+		if (isRegistered(configuration, id)) {
+			return id;
+		}
+		// Configuration中的map不是线程安全的，注册时加锁
+		synchronized (configuration){
+			if (isRegistered(configuration, id)) {
+				return id;
+			}
+			boolean isSelect = sqlCommandType == SqlCommandType.SELECT;
+			SqlSource sqlSource = new EntitySqlSource(configuration, sqlCommandType, metadata);
+			MappedStatement.Builder builder = new MappedStatement.Builder(configuration, id, sqlSource, sqlCommandType);
+			builder.parameterMap(new ParameterMap.Builder(configuration, id + "-Inline", EntityRowParam.class, new ArrayList<ParameterMapping>()).build());
+			if (isSelect) {
+				builder.resultMaps(Collections.singletonList(getEntityResultMap(configuration, id.substring(0, id.lastIndexOf('.')), metadata)));
+			}
+			builder.flushCacheRequired(!isSelect);
+			builder.useCache(isSelect);
+			if (sqlCommandType == SqlCommandType.INSERT && !metadata.getAutoIncrementColumns().isEmpty()) {
+				builder.keyGenerator(new Jdbc3KeyGenerator());
+				builder.keyProperty("generatedKey");
+			}
+			addMappedStatement(configuration, builder.build());
+		}
+		return id;
+	}
+
+	/**
+	 * 按使用的字段生成静态sql，参数按位置从EntityRowParam中取
+	 *
+	 * @param configuration
+	 * @param sqlCommandType
+	 * @param metadata
+	 * @param columns
+	 *            insert或update的字段
+	 * @param whereColumns
+	 *            作为等于条件的字段
+	 * @return
+	 */
+	private static SqlSource buildRowSqlSource(
+			Configuration configuration,
+			SqlCommandType sqlCommandType,
+			EntityMetadata metadata,
+			List<EntityColumn> columns,
+			List<EntityColumn> whereColumns){
+		StringBuilder sql = new StringBuilder();
+		List<ParameterMapping> parameterMappings = new ArrayList<ParameterMapping>();
+		if (sqlCommandType == SqlCommandType.INSERT) {
+			sql.append("insert into `").append(metadata.getTableName()).append("`(");
+			StringBuilder values = new StringBuilder();
+			for (int i = 0; i < columns.size(); i++){
+				if (i > 0) {
+					sql.append(",");
+					values.append(",");
+				}
+				sql.append("`").append(columns.get(i).getName()).append("`");
+				values.append("?");
+				parameterMappings.add(parameterMapping(configuration, "values[" + i + "]", columns.get(i)));
+			}
+			sql.append(") values(").append(values).append(")");
+		}else if (sqlCommandType == SqlCommandType.UPDATE) {
+			sql.append("update `").append(metadata.getTableName()).append("` set ");
+			for (int i = 0; i < columns.size(); i++){
+				if (i > 0) {
+					sql.append(",");
+				}
+				sql.append("`").append(columns.get(i).getName()).append("` = ?");
+				parameterMappings.add(parameterMapping(configuration, "values[" + i + "]", columns.get(i)));
+			}
+			appendWhere(configuration, sql, parameterMappings, whereColumns, "keyValues");
+		}else if (sqlCommandType == SqlCommandType.DELETE) {
+			sql.append("delete from `").append(metadata.getTableName()).append("`");
+			appendWhere(configuration, sql, parameterMappings, whereColumns, "values");
+		}else {
+			sql.append("select * from `").append(metadata.getTableName()).append("`");
+			appendWhere(configuration, sql, parameterMappings, whereColumns, "values");
+		}
+		return new StaticSqlSource(configuration, sql.toString(), parameterMappings);
+	}
+
+	/**
+	 * 拼接where条件，每个字段都是等于条件
+	 *
+	 * @param configuration
+	 * @param sql
+	 * @param parameterMappings
+	 * @param whereColumns
+	 * @param property
+	 *            字段值在EntityRowParam中的属性名
+	 */
+	private static void appendWhere(
+			Configuration configuration,
+			StringBuilder sql,
+			List<ParameterMapping> parameterMappings,
+			List<EntityColumn> whereColumns,
+			String property){
+		for (int i = 0; i < whereColumns.size(); i++){
+			sql.append(i == 0 ? " where " : " and ");
+			sql.append("`").append(whereColumns.get(i).getName()).append("` = ?");
+			parameterMappings.add(parameterMapping(configuration, property + "[" + i + "]", whereColumns.get(i)));
+		}
+	}
+
+	/**
+	 * 按字段的java类型取得参数映射，使用对应的TypeHandler
+	 *
+	 * @param configuration
+	 * @param property
+	 * @param column
+	 * @return
+	 */
+	private static ParameterMapping parameterMapping(Configuration configuration,String property,EntityColumn column){
+		return new ParameterMapping.Builder(configuration, property, column.getField().getType()).build();
+	}
+
+	/**
+	 * 缓存生成的sql时代表使用了哪些字段的部分，按字段在model中的顺序，使用的字段为1，其他为0
+	 * 传入的字段必须按model中的顺序，否则相同的key会对应不同的参数顺序
+	 *
+	 * @param metadata
+	 * @param columns
+	 * @return
+	 */
+	private static String columnMask(EntityMetadata metadata,List<EntityColumn> columns){
+		StringBuilder sb = new StringBuilder();
+		for (EntityColumn column : metadata.getColumns()){
+			sb.append(columns.contains(column) ? '1' : '0');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 取得model的ResultMap，表的字段直接映射到model的属性上，调用方需要持有configuration的锁
+	 *
+	 * @param configuration
+	 * @param namespace
+	 * @param metadata
+	 * @return
+	 */
+	private static ResultMap getEntityResultMap(Configuration configuration,String namespace,EntityMetadata metadata){
+		String id = namespace + ".entity_" + entitySuffix(metadata);
+		if (configuration.hasResultMap(id)) {
+			return configuration.getResultMap(id);
+		}
+		List<ResultMapping> resultMappings = new ArrayList<ResultMapping>();
+		for (EntityColumn column : metadata.getColumns()){
+			resultMappings.add(new ResultMapping.Builder(configuration, column.getField().getName(), column.getName(), column.getField().getType()).build());
+		}
+		ResultMap resultMap = new ResultMap.Builder(configuration, id, metadata.getEntityClass(), resultMappings).build();
+		configuration.addResultMap(resultMap);
+		return resultMap;
+	}
+
+	/**
+	 * 语句id中代表model的部分，不能包含"."，否则会和mybatis的短名称冲突
+	 *
+	 * @param metadata
+	 * @return
+	 */
+	private static String entitySuffix(EntityMetadata metadata){
+		return metadata.getEntityClass().getName().replace('.', '_').replace('$', '_');
+	}
+
+	/**
+	 * 单条数据增删改查语句的SqlSource，按EntityRowParam中使用的字段生成静态sql，
+	 * 生成的sql按字段组合缓存在这里，不注册到Configuration中
+	 */
+	private static class EntitySqlSource implements SqlSource{
+
+		private final Configuration							configuration;
+
+		private final SqlCommandType						sqlCommandType;
+
+		private final EntityMetadata						metadata;
+
+		/**
+		 * key是columns和whereColumns的字段组合
+		 */
+		private final ConcurrentMap<String, SqlSource>	sqlSources	= new ConcurrentHashMap<String, SqlSource>();
+
+		EntitySqlSource(Configuration configuration, SqlCommandType sqlCommandType, EntityMetadata metadata){
+			this.configuration = configuration;
+			this.sqlCommandType = sqlCommandType;
+			this.metadata = metadata;
+		}
+
+		public BoundSql getBoundSql(Object parameterObject){
+			EntityRowParam row = (EntityRowParam) parameterObject;
+			String key = columnMask(metadata, row.getColumns()) + "_" + columnMask(metadata, row.getWhereColumns());
+			SqlSource sqlSource = sqlSources.get(key);
+			if (sqlSource == null) {
+				sqlSource = buildRowSqlSource(configuration, sqlCommandType, metadata, row.getColumns(), row.getWhereColumns());
+				SqlSource existing = sqlSources.putIfAbsent(key, sqlSource);
+				if (existing != null) {
+					sqlSource = existing;
+				}
+			}
+			return sqlSource.getBoundSql(parameterObject);
+		}
+	}
+
+	private static String join(String[] array){
+		if (array == null || array.length == 0) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String str : array){
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(str);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,25 @@
+package com.sunchenbin.store.command;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BatchParamTest{
+
+	@Test
+	public void updateColumnsExcludeKeyColumns(){
+		BatchParam batch = new BatchParam("user", Arrays.asList("id", "name", "age"));
+		batch.getKeyColumns().add("id");
+		assertEquals(Arrays.asList("name", "age"), batch.getUpdateColumns());
+	}
+
+	@Test
+	public void updateColumnsFallBackToKeyColumnsWhenOnlyKeysAreSet(){
+		// 只有主键字段时更新成相同的值，保证ON DUPLICATE KEY UPDATE后面不为空
+		BatchParam batch = new BatchParam("user_role", Arrays.asList("user_id", "role_id"));
+		batch.getKeyColumns().addAll(Arrays.asList("user_id", "role_id"));
+		assertEquals(Arrays.asList("user_id", "role_id"), batch.getUpdateColumns());
+	}
+}
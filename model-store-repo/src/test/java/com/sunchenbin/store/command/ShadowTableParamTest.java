@@ -0,0 +1,59 @@
+package com.sunchenbin.store.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ShadowTableParamTest{
+
+	@Test
+	public void shortTableNamesKeepReadableNames(){
+		ShadowTableParam shadow = new ShadowTableParam("user", "id");
+		assertEquals("_user_new", shadow.getShadowTableName());
+		assertEquals("_user_old", shadow.getOldTableName());
+		assertEquals("_user_ins", shadow.getInsertTriggerName());
+		assertEquals("_user_upd", shadow.getUpdateTriggerName());
+		assertEquals("_user_del", shadow.getDeleteTriggerName());
+	}
+
+	@Test
+	public void longTableNamesAreShortenedWithinMysqlLimit(){
+		String tableName = repeat('a', 60) + "_log";
+		List<String> names = names(new ShadowTableParam(tableName, "id"));
+		for (String name : names){
+			assertTrue(name, name.length() <= ShadowTableParam.MAX_NAME_LENGTH);
+			assertTrue(name, name.startsWith("_" + repeat('a', 40)));
+		}
+		assertEquals(names.size(), new HashSet<String>(names).size());
+		// 同一张表每次生成的名字相同，才能清理上次残留的表和触发器
+		assertEquals(names, names(new ShadowTableParam(tableName, "id")));
+	}
+
+	@Test
+	public void longTableNamesWithSamePrefixDoNotCollide(){
+		List<String> first = names(new ShadowTableParam(repeat('a', 60) + "_log", "id"));
+		List<String> second = names(new ShadowTableParam(repeat('a', 60) + "_tmp", "id"));
+		for (String name : first){
+			assertFalse(name, second.contains(name));
+		}
+	}
+
+	private static List<String> names(ShadowTableParam shadow){
+		return Arrays.asList(shadow.getShadowTableName(), shadow.getOldTableName(), shadow.getInsertTriggerName(), shadow.getUpdateTriggerName(),
+				shadow.getDeleteTriggerName());
+	}
+
+	private static String repeat(char c,int count){
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; i++){
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
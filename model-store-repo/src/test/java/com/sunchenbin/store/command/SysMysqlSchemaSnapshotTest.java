@@ -0,0 +1,90 @@
+package com.sunchenbin.store.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SysMysqlSchemaSnapshotTest{
+
+	private SysMysqlTables			user;
+
+	private SysMysqlSchemaSnapshot	snapshot;
+
+	@Before
+	public void setUp(){
+		user = table("user");
+		snapshot = new SysMysqlSchemaSnapshot(
+				Arrays.asList(user, table("order")),
+				Arrays.asList(column("user", "id"), column("order", "id"), column("user", "name"), column("order", "user_id")),
+				Arrays.asList(statistic("order", "idx_user_id", "user_id"), statistic("user", "uk_name", "name")));
+	}
+
+	@Test
+	public void groupsColumnsByTableKeepingOrder(){
+		List<SysMysqlColumns> columns = snapshot.getColumns("user");
+		assertEquals(2, columns.size());
+		assertEquals("id", columns.get(0).getColumn_name());
+		assertEquals("name", columns.get(1).getColumn_name());
+		assertEquals("user_id", snapshot.getColumns("order").get(1).getColumn_name());
+	}
+
+	@Test
+	public void groupsStatisticsByTable(){
+		assertEquals(1, snapshot.getStatistics("user").size());
+		assertEquals("uk_name", snapshot.getStatistics("user").get(0).getIndex_name());
+		assertEquals("idx_user_id", snapshot.getStatistics("order").get(0).getIndex_name());
+	}
+
+	@Test
+	public void tableNamesAreCaseInsensitive(){
+		assertTrue(snapshot.hasTable("USER"));
+		assertSame(user, snapshot.getTable("User"));
+		assertEquals(2, snapshot.getColumns("USER").size());
+	}
+
+	@Test
+	public void missingTableReturnsEmptyLists(){
+		assertFalse(snapshot.hasTable("missing"));
+		assertNull(snapshot.getTable("missing"));
+		assertTrue(snapshot.getColumns("missing").isEmpty());
+		assertTrue(snapshot.getStatistics("missing").isEmpty());
+	}
+
+	@Test
+	public void removeTableDropsEverything(){
+		snapshot.removeTable("User");
+		assertFalse(snapshot.hasTable("user"));
+		assertTrue(snapshot.getColumns("user").isEmpty());
+		assertTrue(snapshot.getStatistics("user").isEmpty());
+		assertTrue(snapshot.hasTable("order"));
+	}
+
+	private static SysMysqlTables table(String tableName){
+		SysMysqlTables table = new SysMysqlTables();
+		table.setTable_name(tableName);
+		return table;
+	}
+
+	private static SysMysqlColumns column(String tableName,String columnName){
+		SysMysqlColumns column = new SysMysqlColumns();
+		column.setTable_name(tableName);
+		column.setColumn_name(columnName);
+		return column;
+	}
+
+	private static SysMysqlStatistics statistic(String tableName,String indexName,String columnName){
+		SysMysqlStatistics statistic = new SysMysqlStatistics();
+		statistic.setTable_name(tableName);
+		statistic.setIndex_name(indexName);
+		statistic.setColumn_name(columnName);
+		return statistic;
+	}
+}
@@ -0,0 +1,527 @@
+package com.sunchenbin.store.manager.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.command.BatchRowParam;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+import com.sunchenbin.store.dao.common.BaseMysqlCRUDMapper;
+import com.sunchenbin.store.utils.EntityMetadata;
+
+public class BaseMysqlCRUDManagerImplTest{
+
+	private final BaseMysqlCRUDManagerImpl	manager	= new BaseMysqlCRUDManagerImpl();
+
+	private final MapperCalls				calls	= new MapperCalls();
+
+	private final JdbcStub					jdbc	= new JdbcStub();
+
+	/**
+	 * 批量操作通过mapper执行，只记录调用；单条数据的增删改查和按model映射的查询通过模拟的数据源执行
+	 */
+	@Before
+	public void setUp() throws Exception{
+		Configuration configuration = new Configuration(new Environment("test", new SpringManagedTransactionFactory(), jdbc.dataSource()));
+		String resource = "com/sunchenbin/store/mapping/common/BaseMysqlCRUDMapper.xml";
+		InputStream inputStream = Resources.getResourceAsStream(resource);
+		try{
+			new XMLMapperBuilder(inputStream, configuration, resource, configuration.getSqlFragments()).parse();
+		}finally{
+			inputStream.close();
+		}
+		ReflectionTestUtils.setField(manager, "sqlSessionFactory", new DefaultSqlSessionFactory(configuration));
+		ReflectionTestUtils.setField(manager, "baseMysqlCRUDMapper", calls.newMapper());
+		manager.init();
+	}
+
+	@Test
+	public void invalidBatchSizeFallsBackToDefault(){
+		assertEquals(200, batchSize(" 200 "));
+		assertEquals(500, batchSize(null));
+		assertEquals(500, batchSize("0"));
+		assertEquals(500, batchSize("-1"));
+		assertEquals(500, batchSize("abc"));
+	}
+
+	@Test
+	public void saveAllSplitsRowsByBatchSize(){
+		ReflectionTestUtils.setField(manager, "batchRows", 2);
+		manager.saveAll(Arrays.asList(user(null, "a"), user(null, "b"), user(null, "c"), user(null, "d"), user(null, "e")));
+		assertEquals(Arrays.asList("saveBatch", "saveBatch", "saveBatch"), calls.names);
+		assertEquals(Arrays.asList(2, 2, 1), calls.rowCounts(2));
+		assertEquals(Arrays.asList("name"), calls.args.get(0)[1]);
+	}
+
+	@Test
+	public void updateAllGroupsRowsByKeyAndSkipsRowsWithoutChanges(){
+		manager.updateAll(Arrays.asList(user(1L, "a"), user(2L, null), user(null, "c"), user(3L, "d")));
+		assertEquals(Arrays.asList("updateBatch"), calls.names);
+		assertEquals(Arrays.asList("id"), calls.args.get(0)[1]);
+		assertEquals(Arrays.asList("name"), calls.args.get(0)[2]);
+		assertEquals(Arrays.asList(2), calls.rowCounts(3));
+	}
+
+	@Test
+	public void deleteAllSkipsRowsWithoutKey(){
+		manager.deleteAll(Arrays.asList(user(1L, "a"), user(null, "b"), user(2L, null)));
+		assertEquals(Arrays.asList("deleteBatch"), calls.names);
+		assertEquals(Arrays.asList("id"), calls.args.get(0)[1]);
+		assertEquals(Arrays.asList(2), calls.rowCounts(2));
+	}
+
+	@Test
+	public void updateAllAndDeleteAllEvictOnlyTheirKeys(){
+		EntityCache cache = cache(CachedUser.class);
+		for (long id = 1; id <= 3; id++){
+			cache.put(key(id), cachedUser(id, "cached"), cache.getVersion());
+		}
+		manager.updateAll(Arrays.asList(cachedUser(1L, "changed")));
+		manager.deleteAll(Arrays.asList(cachedUser(2L, null)));
+		assertNull(cache.get(key(1L)));
+		assertNull(cache.get(key(2L)));
+		assertNotNull(cache.get(key(3L)));
+	}
+
+	@Test
+	public void upsertAllClearsCacheAgainAfterTransaction(){
+		EntityCache cache = cache(CachedUser.class);
+		cache.put(key(1L), cachedUser(1L, "cached"), cache.getVersion());
+		beginTransaction();
+		manager.upsertAll(Arrays.asList(cachedUser(1L, "changed"), cachedUser(null, "new")));
+		assertEquals(Arrays.asList("upsertBatch", "upsertBatch"), calls.names);
+		assertEquals(Arrays.asList("name"), calls.args.get(0)[2]);
+		assertNull(cache.get(key(1L)));
+
+		// 事务提交前其他线程读到旧数据放入缓存，事务结束后要再清空一次
+		cache.put(key(1L), cachedUser(1L, "stale"), cache.getVersion());
+		endTransaction(true);
+		assertNull(cache.get(key(1L)));
+	}
+
+	@Test
+	public void streamMapsRowsOntoEntitiesWithItsOwnConnection(){
+		jdbc.addRow("id", 1L, "name", "a");
+		jdbc.addRow("id", 2L, "name", "b");
+		final List<User> users = new ArrayList<User>();
+		manager.stream(user(null, null), new EntityHandler<User>(){
+
+			public void handle(User user){
+				users.add(user);
+			}
+		});
+		assertEquals(Arrays.asList("select * from `user`"), jdbc.sqls);
+		assertEquals(1, jdbc.connections);
+		assertEquals(2, users.size());
+		assertEquals(Long.valueOf(2), users.get(1).getId());
+		assertEquals("b", users.get(1).getName());
+	}
+
+	@Test
+	public void queryMapsColumnsOntoEntityFields(){
+		jdbc.addRow("id", 1L, "name", "a", "nick_name", "b");
+		List<?> list = manager.query(user(1L, null));
+		assertEquals(Arrays.asList("select * from `user` where `id` = ?"), jdbc.sqls);
+		assertEquals(Arrays.<Object> asList(1L), jdbc.params.get(0));
+		User user = (User) list.get(0);
+		assertEquals(Long.valueOf(1), user.getId());
+		assertEquals("a", user.getName());
+		assertEquals("b", user.getNickName());
+	}
+
+	@Test
+	public void queryAfterStartsAfterLastKeyInKeyOrder(){
+		jdbc.addRow("id", 6L, "name", "a");
+		List<?> list = manager.queryAfter(user(null, "a"), 5L);
+		assertEquals(Arrays.asList("select * from `user` WHERE `name` = ? and ( `id` ) > ( ? ) order by `id` limit ?"), jdbc.sqls);
+		assertEquals(Arrays.<Object> asList("a", 5L, 10), jdbc.params.get(0));
+		assertEquals(Long.valueOf(6), ((User) list.get(0)).getId());
+	}
+
+	@Test
+	public void queryAfterFirstPageHasNoKeyCondition(){
+		manager.queryAfter(user(null, null));
+		assertEquals(Arrays.asList("select * from `user` order by `id` limit ?"), jdbc.sqls);
+		assertEquals(Arrays.<Object> asList(10), jdbc.params.get(0));
+	}
+
+	@Test
+	public void queryAfterRejectsWrongLastKey(){
+		try{
+			manager.queryAfter(user(null, null), 5L, 6L);
+			fail();
+		}catch (IllegalArgumentException e){
+			assertEquals("表user的主键有1个字段，传入的lastKey有2个值！", e.getMessage());
+		}
+		try{
+			manager.queryAfter(new Log());
+			fail();
+		}catch (IllegalArgumentException e){
+			assertEquals("表log没有主键，不能按主键分页查询！", e.getMessage());
+		}
+		assertTrue(jdbc.sqls.isEmpty());
+	}
+
+	@Test
+	public void projectionSelectsOnlyRequestedColumns(){
+		jdbc.addRow("name", "a");
+		List<?> list = manager.query(user(null, "a"), "name", "nick_name", "name");
+		assertEquals(Arrays.asList("select `name` , `nick_name` from `user` WHERE `name` = ?"), jdbc.sqls);
+		User user = (User) list.get(0);
+		assertNull(user.getId());
+		assertEquals("a", user.getName());
+	}
+
+	@Test
+	public void projectionRejectsUnknownColumns(){
+		try{
+			manager.query(user(null, null), "name", "password");
+			fail();
+		}catch (IllegalArgumentException e){
+			assertEquals("表user中没有配置字段password！", e.getMessage());
+		}
+		assertTrue(jdbc.sqls.isEmpty());
+	}
+
+	@Test
+	public void countAndExistsUseNonNullFieldsAsConditions(){
+		calls.results.put("count", 3L);
+		assertEquals(3, manager.count(user(null, "a")));
+		assertFalse(manager.exists(user(null, "a")));
+		calls.results.put("exists", 1);
+		assertTrue(manager.exists(user(null, "a")));
+
+		assertEquals(Arrays.asList("count", "exists", "exists"), calls.names);
+		Map<?, ?> tableMap = (Map<?, ?>) calls.args.get(0)[0];
+		Map<?, ?> conditions = (Map<?, ?>) tableMap.get("user");
+		assertEquals("a", conditions.get("name"));
+		assertNull(conditions.get("id"));
+	}
+
+	@Test
+	public void saveWritesGeneratedKeyBack(){
+		jdbc.generatedKey = 42L;
+		User user = user(null, "a");
+		manager.save(user);
+		assertEquals(Arrays.asList("insert into `user`(`name`) values(?)"), jdbc.sqls);
+		assertEquals(Long.valueOf(42), user.getId());
+	}
+
+	@Test
+	public void generatedKeyIsConvertedToFieldType(){
+		jdbc.generatedKey = 7L;
+		Tag tag = new Tag();
+		tag.setName("a");
+		manager.save(tag);
+		assertEquals(Integer.valueOf(7), tag.getId());
+	}
+
+	@Test
+	public void saveAllWritesGeneratedKeysBackInOrder(){
+		calls.nextKey = 100L;
+		User first = user(null, "a");
+		User second = user(null, null);
+		second.setNickName("b");
+		User third = user(null, "c");
+		List<Long> keys = manager.saveAll(Arrays.asList(first, second, third));
+		// 按字段分组执行，first和third在同一批中，主键仍然按传入的顺序返回
+		assertEquals(Arrays.asList(100L, 102L, 101L), keys);
+		assertEquals(Long.valueOf(100), first.getId());
+		assertEquals(Long.valueOf(102), second.getId());
+		assertEquals(Long.valueOf(101), third.getId());
+	}
+
+	@Test
+	public void rolledBackSaveIsWrittenAgainOnRetry(){
+		TrackedUser user = loadTrackedUser(1L, "a");
+		user.setName("b");
+		beginTransaction();
+		manager.save(user);
+		endTransaction(false);
+		assertEquals(Arrays.asList("update `tracked_user` set `name` = ? where `id` = ?"), jdbc.sqls);
+
+		// 回滚后快照仍然是修改前的值，重试时要再次更新
+		manager.save(user);
+		assertEquals(2, jdbc.sqls.size());
+		assertEquals(Arrays.<Object> asList("b", 1L), jdbc.params.get(1));
+		// 没有事务时更新后立即记录快照，没有修改时不再执行sql
+		manager.save(user);
+		assertEquals(2, jdbc.sqls.size());
+	}
+
+	@Test
+	public void committedSaveRefreshesSnapshotAfterCommit(){
+		TrackedUser user = loadTrackedUser(1L, "a");
+		user.setName("b");
+		beginTransaction();
+		manager.save(user);
+		// 提交前快照还没有更新
+		assertTrue(trackedSnapshots().isDirty(user, 1, "b"));
+		endTransaction(true);
+		assertFalse(trackedSnapshots().isDirty(user, 1, "b"));
+		manager.save(user);
+		assertEquals(1, jdbc.sqls.size());
+	}
+
+	@Test
+	public void snapshotKeepsValuesWrittenNotValuesAtCommit(){
+		TrackedUser user = loadTrackedUser(1L, "a");
+		user.setName("b");
+		beginTransaction();
+		manager.save(user);
+		// 保存后提交前的修改没有写入数据库，提交后仍然是修改过的字段
+		user.setName("c");
+		endTransaction(true);
+		assertTrue(trackedSnapshots().isDirty(user, 1, "c"));
+		assertFalse(trackedSnapshots().isDirty(user, 1, "b"));
+	}
+
+	@Test
+	public void saveAllSnapshotsInsertedRows(){
+		calls.nextKey = 1L;
+		TrackedUser user = new TrackedUser();
+		user.setName("a");
+		manager.saveAll(Arrays.asList(user));
+		manager.save(user);
+		assertTrue(jdbc.sqls.isEmpty());
+
+		user.setName("b");
+		manager.save(user);
+		assertEquals(Arrays.asList("update `tracked_user` set `name` = ? where `id` = ?"), jdbc.sqls);
+	}
+
+	@After
+	public void clearTransaction(){
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+		for (Object key : new ArrayList<Object>(TransactionSynchronizationManager.getResourceMap().keySet())){
+			TransactionSynchronizationManager.unbindResource(key);
+		}
+	}
+
+	/**
+	 * 模拟spring开启的事务，只启用事务同步，不访问数据库
+	 */
+	private static void beginTransaction(){
+		TransactionSynchronizationManager.initSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+	}
+
+	/**
+	 * 模拟事务结束，依次回调注册的事务同步，提交时先回调afterCommit，最后清除事务同步
+	 */
+	private static void endTransaction(boolean commit){
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		if (commit) {
+			for (TransactionSynchronization synchronization : synchronizations){
+				synchronization.afterCommit();
+			}
+		}
+		for (TransactionSynchronization synchronization : synchronizations){
+			synchronization.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+		}
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+	}
+
+	/**
+	 * 通过查询取得开启了跟踪修改的对象，查询的sql不计入jdbc.sqls
+	 */
+	private TrackedUser loadTrackedUser(Long id,String name){
+		jdbc.addRow("id", id, "name", name);
+		TrackedUser condition = new TrackedUser();
+		condition.setId(id);
+		TrackedUser user = (TrackedUser) manager.query(condition).get(0);
+		jdbc.rows.clear();
+		jdbc.sqls.clear();
+		jdbc.params.clear();
+		return user;
+	}
+
+	private EntitySnapshots trackedSnapshots(){
+		return (EntitySnapshots) ReflectionTestUtils.getField(manager, "snapshots");
+	}
+
+	private int batchSize(String batchSize){
+		ReflectionTestUtils.setField(manager, "batchSize", batchSize);
+		return (Integer) ReflectionTestUtils.invokeMethod(manager, "getBatchSize");
+	}
+
+	private EntityCache cache(Class<?> entityClass){
+		return (EntityCache) ReflectionTestUtils.invokeMethod(manager, "getEntityCache", EntityMetadata.forClass(entityClass));
+	}
+
+	private static List<Object> key(Long id){
+		return Arrays.<Object> asList(id);
+	}
+
+	private static CachedUser cachedUser(Long id,String name){
+		CachedUser user = new CachedUser();
+		user.setId(id);
+		user.setName(name);
+		return user;
+	}
+
+	private static User user(Long id,String name){
+		User user = new User();
+		user.setId(id);
+		user.setName(name);
+		return user;
+	}
+
+	/**
+	 * 记录mapper每次被调用的方法和参数，不访问数据库
+	 */
+	private static class MapperCalls implements InvocationHandler{
+
+		private final List<String>		names	= new ArrayList<String>();
+
+		private final List<Object[]>	args	= new ArrayList<Object[]>();
+
+		/**
+		 * 按方法名返回的结果，没有设置时返回null
+		 */
+		private final Map<String, Object>	results	= new HashMap<String, Object>();
+
+		/**
+		 * 不为null时saveBatch从这个值开始依次为每行设置数据库生成的自增主键
+		 */
+		private Long						nextKey;
+
+		BaseMysqlCRUDMapper newMapper(){
+			return (BaseMysqlCRUDMapper) Proxy.newProxyInstance(BaseMysqlCRUDMapper.class.getClassLoader(), new Class<?>[] { BaseMysqlCRUDMapper.class },
+					this);
+		}
+
+		public Object invoke(Object proxy,Method method,Object[] methodArgs){
+			names.add(method.getName());
+			args.add(methodArgs);
+			if ("saveBatch".equals(method.getName()) && nextKey != null) {
+				for (Object row : (List<?>) methodArgs[2]){
+					((BatchRowParam) row).setGeneratedKey(nextKey++);
+				}
+			}
+			return results.get(method.getName());
+		}
+
+		/**
+		 * 每次调用时作为行数据的参数的行数
+		 */
+		@SuppressWarnings("unchecked")
+		List<Integer> rowCounts(int argIndex){
+			List<Integer> counts = new ArrayList<Integer>();
+			for (Object[] methodArgs : args){
+				counts.add(((List<BatchRowParam>) methodArgs[argIndex]).size());
+			}
+			return counts;
+		}
+	}
+
+	@Table(name = "user")
+	public static class User{
+
+		@Column(name = "id",type = MySqlTypeConstant.BIGINT,isNull = false,isKey = true,isAutoIncrement = true)
+		private Long	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		@Column(name = "nick_name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	nickName;
+
+		public Long getId(){
+			return id;
+		}
+
+		public void setId(Long id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+
+		public String getNickName(){
+			return nickName;
+		}
+
+		public void setNickName(String nickName){
+			this.nickName = nickName;
+		}
+	}
+
+	@Table(name = "tag")
+	public static class Tag{
+
+		@Column(name = "id",type = MySqlTypeConstant.INT,length = 11,isNull = false,isKey = true,isAutoIncrement = true)
+		private Integer	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		public Integer getId(){
+			return id;
+		}
+
+		public void setId(Integer id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+	}
+
+	@Table(name = "log")
+	public static class Log{
+
+		@Column(name = "message",type = MySqlTypeConstant.VARCHAR,length = 200)
+		private String	message;
+	}
+
+	@Table(name = "tracked_user",trackChanges = true)
+	public static class TrackedUser extends User{
+	}
+
+	@Table(name = "cached_user",cache = true)
+	public static class CachedUser extends User{
+	}
+}
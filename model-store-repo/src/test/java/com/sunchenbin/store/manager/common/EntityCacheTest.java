@@ -0,0 +1,153 @@
+package com.sunchenbin.store.manager.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+import com.sunchenbin.store.utils.EntityMetadata;
+
+public class EntityCacheTest{
+
+	private final EntityMetadata	metadata	= EntityMetadata.forClass(Item.class);
+
+	@Test
+	public void returnsCopiesOfCachedValues(){
+		EntityCache cache = new EntityCache(metadata, 0, 10);
+		Item item = item(1, "a");
+		cache.put(key(1), item, cache.getVersion());
+		item.setName("changed");
+
+		Item cached = (Item) cache.get(key(1));
+		assertEquals("a", cached.getName());
+		cached.setName("changed");
+		assertNotSame(cached, cache.get(key(1)));
+		assertEquals("a", ((Item) cache.get(key(1))).getName());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed(){
+		EntityCache cache = new EntityCache(metadata, 0, 2);
+		cache.put(key(1), item(1, "a"), cache.getVersion());
+		cache.put(key(2), item(2, "b"), cache.getVersion());
+		// 访问1之后，最久没有使用的是2
+		cache.get(key(1));
+		cache.put(key(3), item(3, "c"), cache.getVersion());
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get(key(2)));
+		assertEquals("a", ((Item) cache.get(key(1))).getName());
+		assertEquals("c", ((Item) cache.get(key(3))).getName());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void expiresAfterTtl() throws InterruptedException{
+		EntityCache cache = new EntityCache(metadata, 1, 10);
+		cache.put(key(1), item(1, "a"), cache.getVersion());
+		Thread.sleep(20);
+		assertNull(cache.get(key(1)));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void countsHitsAndMisses(){
+		EntityCache cache = new EntityCache(metadata, 0, 10);
+		assertEquals(0, cache.getHitRate(), 0);
+		cache.get(key(1));
+		cache.put(key(1), item(1, "a"), cache.getVersion());
+		cache.get(key(1));
+		cache.get(key(1));
+		cache.get(key(2));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void dropsPutWhenKeyWasRemovedDuringRead(){
+		EntityCache cache = new EntityCache(metadata, 0, 10);
+		long version = cache.getVersion();
+		cache.remove(key(1));
+
+		assertFalse(cache.put(key(1), item(1, "old"), version));
+		assertNull(cache.get(key(1)));
+		// 其他主键不受影响
+		assertTrue(cache.put(key(2), item(2, "b"), version));
+		// 淘汰之后开始的查询可以放入缓存
+		assertTrue(cache.put(key(1), item(1, "new"), cache.getVersion()));
+	}
+
+	@Test
+	public void dropsAllPutsStartedBeforeClear(){
+		EntityCache cache = new EntityCache(metadata, 0, 10);
+		long version = cache.getVersion();
+		cache.put(key(1), item(1, "a"), version);
+		cache.clear();
+
+		assertEquals(0, cache.size());
+		assertFalse(cache.put(key(2), item(2, "b"), version));
+		assertTrue(cache.put(key(2), item(2, "b"), cache.getVersion()));
+	}
+
+	@Test
+	public void dropsOldPutsWhenTombstonesOverflow(){
+		EntityCache cache = new EntityCache(metadata, 0, 10);
+		long version = cache.getVersion();
+		for (int i = 0; i <= 1000; i++){
+			cache.remove(key(1000 + i));
+		}
+		// 最早的淘汰记录被丢弃后，在它之前开始的查询一律不放入缓存
+		assertFalse(cache.put(key(1), item(1, "a"), version));
+		assertTrue(cache.put(key(1), item(1, "a"), cache.getVersion()));
+	}
+
+	private static List<Object> key(int id){
+		return new ArrayList<Object>(Arrays.asList((Object) id));
+	}
+
+	private static Item item(int id,String name){
+		Item item = new Item();
+		item.setId(id);
+		item.setName(name);
+		return item;
+	}
+
+	@Table(name = "item",cache = true)
+	public static class Item{
+
+		@Column(name = "id",type = MySqlTypeConstant.INT,length = 11,isNull = false,isKey = true)
+		private Integer	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		public Integer getId(){
+			return id;
+		}
+
+		public void setId(Integer id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.sunchenbin.store.manager.common;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+import com.sunchenbin.store.utils.EntityMetadata;
+
+public class EntitySnapshotsTest{
+
+	private final EntityMetadata	metadata	= EntityMetadata.forClass(Account.class);
+
+	private final EntitySnapshots	snapshots	= new EntitySnapshots();
+
+	@Test
+	public void detectsChangedFields(){
+		Account account = account(1, "a", null);
+		snapshots.snapshot(metadata, account);
+
+		assertFalse(snapshots.isDirty(account, 0, 1));
+		assertFalse(snapshots.isDirty(account, 1, "a"));
+		assertTrue(snapshots.isDirty(account, 1, "b"));
+		assertFalse(snapshots.isDirty(account, 2, null));
+		assertTrue(snapshots.isDirty(account, 2, "x"));
+		assertTrue(snapshots.isDirty(account, 1, null));
+	}
+
+	@Test
+	public void everyFieldIsDirtyWithoutSnapshot(){
+		Account account = account(1, "a", null);
+		assertTrue(snapshots.isDirty(account, 1, "a"));
+
+		snapshots.snapshot(metadata, account);
+		snapshots.remove(account);
+		assertTrue(snapshots.isDirty(account, 1, "a"));
+	}
+
+	@Test
+	public void equalObjectsHaveTheirOwnSnapshots(){
+		Account first = account(1, "a", null);
+		Account second = account(1, "b", null);
+		assertTrue(first.equals(second));
+
+		snapshots.snapshot(metadata, first);
+		assertTrue(snapshots.isDirty(second, 1, "b"));
+		snapshots.snapshot(metadata, second);
+		assertFalse(snapshots.isDirty(first, 1, "a"));
+		assertFalse(snapshots.isDirty(second, 1, "b"));
+
+		snapshots.remove(second);
+		assertFalse(snapshots.isDirty(first, 1, "a"));
+	}
+
+	@Test
+	public void findsSnapshotAfterHashCodeChanges(){
+		Account account = account(1, "a", null);
+		snapshots.snapshot(metadata, account);
+		account.setId(2);
+		assertFalse(snapshots.isDirty(account, 1, "a"));
+	}
+
+	private static Account account(Integer id,String name,String remark){
+		Account account = new Account();
+		account.setId(id);
+		account.setName(name);
+		account.setRemark(remark);
+		return account;
+	}
+
+	/**
+	 * equals/hashCode基于可变的主键，用于验证快照按引用查找
+	 */
+	@Table(name = "account",trackChanges = true)
+	public static class Account{
+
+		@Column(name = "id",type = MySqlTypeConstant.INT,length = 11,isNull = false,isKey = true)
+		private Integer	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		@Column(name = "remark",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	remark;
+
+		public Integer getId(){
+			return id;
+		}
+
+		public void setId(Integer id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+
+		public String getRemark(){
+			return remark;
+		}
+
+		public void setRemark(String remark){
+			this.remark = remark;
+		}
+
+		public boolean equals(Object obj){
+			return obj instanceof Account && id != null && id.equals(((Account) obj).id);
+		}
+
+		public int hashCode(){
+			return id == null ? 0 : id.hashCode();
+		}
+	}
+}
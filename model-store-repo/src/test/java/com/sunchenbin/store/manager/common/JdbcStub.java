@@ -0,0 +1,241 @@
+package com.sunchenbin.store.manager.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+/**
+ * 用动态代理模拟的数据源，记录执行的sql和参数，查询时返回预先设置的数据，不访问数据库
+ */
+class JdbcStub{
+
+	/**
+	 * 执行过的sql，空白字符合并成一个空格
+	 */
+	final List<String>						sqls			= new ArrayList<String>();
+
+	/**
+	 * 每条sql的参数，按参数的下标排序
+	 */
+	final List<List<Object>>				params			= new ArrayList<List<Object>>();
+
+	/**
+	 * 查询返回的数据，每行按字段名保存
+	 */
+	final List<Map<String, Object>>			rows			= new ArrayList<Map<String, Object>>();
+
+	/**
+	 * insert时数据库生成的自增主键
+	 */
+	Long									generatedKey;
+
+	/**
+	 * 取得过的连接数
+	 */
+	int										connections;
+
+	DataSource dataSource(){
+		return proxy(DataSource.class, new InvocationHandler(){
+
+			public Object invoke(Object proxy,Method method,Object[] args){
+				if ("getConnection".equals(method.getName())) {
+					connections++;
+					return connection();
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	/**
+	 * 增加一行查询返回的数据，参数依次是字段名和值
+	 */
+	void addRow(Object...columnsAndValues){
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < columnsAndValues.length; i += 2){
+			row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+		}
+		rows.add(row);
+	}
+
+	private Connection connection(){
+		return proxy(Connection.class, new InvocationHandler(){
+
+			public Object invoke(Object proxy,Method method,Object[] args){
+				if ("prepareStatement".equals(method.getName())) {
+					return statement((String) args[0]);
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	private PreparedStatement statement(final String sql){
+		final String normalizedSql = sql.trim().replaceAll("\\s+", " ");
+		final Map<Integer, Object> statementParams = new TreeMap<Integer, Object>();
+		return proxy(PreparedStatement.class, new InvocationHandler(){
+
+			private boolean	executed;
+
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name = method.getName();
+				if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+					statementParams.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+					return null;
+				}
+				if ("execute".equals(name)) {
+					sqls.add(normalizedSql);
+					params.add(new ArrayList<Object>(statementParams.values()));
+					executed = true;
+					return isQuery();
+				}
+				if ("getResultSet".equals(name)) {
+					return executed && isQuery() ? resultSet(rows) : null;
+				}
+				if ("getUpdateCount".equals(name)) {
+					// 只返回一次更新的行数，之后返回-1表示没有更多结果
+					int updateCount = executed && !isQuery() ? 1 : -1;
+					executed = false;
+					return updateCount;
+				}
+				if ("getGeneratedKeys".equals(name)) {
+					List<Map<String, Object>> keys = new ArrayList<Map<String, Object>>();
+					if (generatedKey != null) {
+						keys.add(Collections.<String, Object> singletonMap("GENERATED_KEY", generatedKey));
+					}
+					return resultSet(keys);
+				}
+				return defaultValue(method);
+			}
+
+			private boolean isQuery(){
+				return normalizedSql.toLowerCase().startsWith("select");
+			}
+		});
+	}
+
+	private static ResultSet resultSet(final List<Map<String, Object>> data){
+		final List<String> columns = data.isEmpty() ? new ArrayList<String>() : new ArrayList<String>(data.get(0).keySet());
+		return proxy(ResultSet.class, new InvocationHandler(){
+
+			private int		index	= -1;
+
+			private Object	lastValue;
+
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name = method.getName();
+				if ("next".equals(name)) {
+					return ++index < data.size();
+				}
+				if ("wasNull".equals(name)) {
+					return lastValue == null;
+				}
+				if ("getMetaData".equals(name)) {
+					return metaData(columns, data);
+				}
+				if ("getType".equals(name)) {
+					return ResultSet.TYPE_FORWARD_ONLY;
+				}
+				if (name.startsWith("get") && args != null && args.length >= 1) {
+					String column = args[0] instanceof Integer ? columns.get((Integer) args[0] - 1) : (String) args[0];
+					lastValue = data.get(index).get(column);
+					return convert(lastValue, method);
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	private static ResultSetMetaData metaData(final List<String> columns,final List<Map<String, Object>> data){
+		return proxy(ResultSetMetaData.class, new InvocationHandler(){
+
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name = method.getName();
+				if ("getColumnCount".equals(name)) {
+					return columns.size();
+				}
+				if ("getColumnLabel".equals(name) || "getColumnName".equals(name)) {
+					return columns.get((Integer) args[0] - 1);
+				}
+				if ("getColumnType".equals(name)) {
+					return Types.OTHER;
+				}
+				if ("getColumnClassName".equals(name)) {
+					Object value = data.get(0).get(columns.get((Integer) args[0] - 1));
+					return value == null ? Object.class.getName() : value.getClass().getName();
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	/**
+	 * 按getXxx方法的返回类型转换字段的值
+	 */
+	private static Object convert(Object value,Method method){
+		Class<?> type = method.getReturnType();
+		if (value == null) {
+			return defaultValue(method);
+		}
+		if (value instanceof Number) {
+			Number number = (Number) value;
+			if (type == long.class) {
+				return number.longValue();
+			}
+			if (type == int.class) {
+				return number.intValue();
+			}
+			if (type == short.class) {
+				return number.shortValue();
+			}
+		}
+		if (type == String.class) {
+			return value.toString();
+		}
+		return value;
+	}
+
+	private static Object defaultValue(Method method){
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == short.class) {
+			return (short) 0;
+		}
+		if (type == byte.class) {
+			return (byte) 0;
+		}
+		if (type == float.class) {
+			return 0F;
+		}
+		if (type == double.class) {
+			return 0D;
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type,InvocationHandler handler){
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+}
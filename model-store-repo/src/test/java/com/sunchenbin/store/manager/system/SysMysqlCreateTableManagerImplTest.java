@@ -0,0 +1,532 @@
+package com.sunchenbin.store.manager.system;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Index;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.annotation.Unique;
+import com.sunchenbin.store.command.AlterTableParam;
+import com.sunchenbin.store.command.CreateIndexParam;
+import com.sunchenbin.store.command.CreateTableParam;
+import com.sunchenbin.store.command.SysMysqlColumns;
+import com.sunchenbin.store.command.SysMysqlSchemaSnapshot;
+import com.sunchenbin.store.command.SysMysqlStatistics;
+import com.sunchenbin.store.command.SysMysqlTables;
+import com.sunchenbin.store.constants.MySqlAlterAlgorithmConstant;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+import com.sunchenbin.store.dao.system.CreateMysqlTablesMapper;
+
+public class SysMysqlCreateTableManagerImplTest{
+
+	private final SysMysqlCreateTableManagerImpl	manager	= new SysMysqlCreateTableManagerImpl();
+
+	@Test
+	public void parsesMysqlVersion(){
+		assertEquals(80026, versionNumber("8.0.26-log"));
+		assertEquals(50744, versionNumber("5.7.44"));
+		assertEquals(50700, versionNumber("5.7"));
+		assertEquals(100412, versionNumber("10.4.12-MariaDB-1:10.4.12+maria~bionic"));
+		assertEquals(0, versionNumber(""));
+		assertEquals(0, versionNumber(null));
+	}
+
+	@Test
+	public void addColumnIsInstantSince8012(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getAddFields().add(varchar("nick", 50));
+		assertEquals(MySqlAlterAlgorithmConstant.INSTANT, estimate("8.0.12", alterTableParam, snapshot()));
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("8.0.11", alterTableParam, snapshot()));
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("5.7.44", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void dropColumnIsInstantSince8029(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getRemoveFields().add("name");
+		assertEquals(MySqlAlterAlgorithmConstant.INSTANT, estimate("8.0.29", alterTableParam, snapshot()));
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("8.0.28", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void addAutoIncrementColumnNeedsCopy(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		CreateTableParam field = varchar("seq", 11);
+		field.setFieldIsAutoIncrement(true);
+		alterTableParam.getAddFields().add(field);
+		alterTableParam.getRemoveFields().add("name");
+		assertEquals(MySqlAlterAlgorithmConstant.COPY, estimate("8.0.30", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void varcharLengthWithinSameLengthBytesIsInplace(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getModifyFields().add(varchar("name", 100));
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("8.0.30", alterTableParam, snapshot()));
+
+		alterTableParam = new AlterTableParam("user");
+		alterTableParam.getModifyFields().add(varchar("name", 300));
+		assertEquals(MySqlAlterAlgorithmConstant.COPY, estimate("8.0.30", alterTableParam, snapshot()));
+
+		alterTableParam = new AlterTableParam("user");
+		alterTableParam.getModifyFields().add(varchar("name", 20));
+		assertEquals(MySqlAlterAlgorithmConstant.COPY, estimate("8.0.30", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void defaultValueOnlyChangeIsInstantOnMysql8(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		CreateTableParam field = varchar("name", 50);
+		field.setFieldDefaultValue("none");
+		alterTableParam.getModifyFields().add(field);
+		assertEquals(MySqlAlterAlgorithmConstant.INSTANT, estimate("8.0.30", alterTableParam, snapshot()));
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("5.7.44", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void indexChangesAreInplaceAndListed(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getDropIndexes().add("idx_old");
+		CreateIndexParam index = new CreateIndexParam();
+		index.setIndexName("idx_name");
+		index.getIndexColumns().add("name");
+		alterTableParam.getAddIndexes().add(index);
+		List<String> changeList = new ArrayList<String>();
+		assertEquals(MySqlAlterAlgorithmConstant.INPLACE, estimate("8.0.30", alterTableParam, snapshot(), changeList));
+		assertEquals(Arrays.asList("删除索引idx_old：INPLACE", "增加索引idx_name：INPLACE"), changeList);
+	}
+
+	@Test
+	public void collectsIndexesFromFieldsAndTable(){
+		List<Object> indexList = new ArrayList<Object>();
+		ReflectionTestUtils.invokeMethod(manager, "tableIndexesConstruct", Book.class, indexList);
+		assertEquals(4, indexList.size());
+		assertIndex(indexList.get(0), "idx_title", false, "title");
+		assertIndex(indexList.get(1), "uk_code", true, "code");
+		assertIndex(indexList.get(2), "idx_author_title", false, "author", "title");
+		assertIndex(indexList.get(3), "uk_isbn", true, "isbn");
+	}
+
+	@Test
+	public void sameIndexComparesUniquenessAndColumnOrder(){
+		assertTrue(isSameIndex(index("idx_a", false, "a", "b"), index("IDX_A", false, "A", "B")));
+		assertFalse(isSameIndex(index("idx_a", false, "a", "b"), index("idx_a", false, "b", "a")));
+		assertFalse(isSameIndex(index("idx_a", false, "a", "b"), index("idx_a", false, "a")));
+		assertFalse(isSameIndex(index("idx_a", false, "a"), index("idx_a", true, "a")));
+	}
+
+	@Test
+	public void diffsModelIndexesAgainstStatistics(){
+		List<Object> newIndexList = new ArrayList<Object>();
+		newIndexList.add(index("idx_title", false, "title"));
+		newIndexList.add(index("uk_code", true, "code"));
+		newIndexList.add(index("idx_author_title", false, "author", "title"));
+		List<SysMysqlStatistics> statistics = Arrays.asList(
+				statistic("PRIMARY", 0, 1, "id"),
+				statistic("IDX_TITLE", 1, 1, "title"),
+				statistic("uk_code", 1, 1, "code"),
+				statistic("idx_author_title", 1, 1, "title"),
+				statistic("idx_author_title", 1, 2, "author"),
+				statistic("idx_removed", 1, 1, "author"),
+				statistic("manual_index", 1, 1, "isbn"));
+		Map<String, List<Object>> addIndexTableMap = new HashMap<String, List<Object>>();
+		Map<String, List<Object>> dropIndexTableMap = new HashMap<String, List<Object>>();
+		ReflectionTestUtils.invokeMethod(manager, "buildAddAndDropIndexes", addIndexTableMap, dropIndexTableMap, Book.class.getAnnotation(Table.class), newIndexList, statistics);
+
+		// idx_title相同不变；uk_code唯一性不同、idx_author_title字段顺序不同都要重建；manual_index不是自动生成的名字，保留
+		assertEquals(Arrays.asList(newIndexList.get(1), newIndexList.get(2)), addIndexTableMap.get("book"));
+		assertEquals(Arrays.<Object> asList("uk_code", "idx_author_title", "idx_removed"), dropIndexTableMap.get("book"));
+	}
+
+	@Test
+	public void unchangedIndexesProduceNoChanges(){
+		List<Object> newIndexList = new ArrayList<Object>();
+		newIndexList.add(index("idx_title", false, "title"));
+		Map<String, List<Object>> addIndexTableMap = new HashMap<String, List<Object>>();
+		Map<String, List<Object>> dropIndexTableMap = new HashMap<String, List<Object>>();
+		ReflectionTestUtils.invokeMethod(manager, "buildAddAndDropIndexes", addIndexTableMap, dropIndexTableMap, Book.class.getAnnotation(Table.class), newIndexList,
+				Arrays.asList(statistic("idx_title", 1, 1, "title")));
+		assertTrue(addIndexTableMap.isEmpty());
+		assertTrue(dropIndexTableMap.isEmpty());
+	}
+
+	@Test
+	public void shadowCopyRefusesUniqueIndex(){
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getAddIndexes().add(index("idx_name", false, "name"));
+		assertNull(ReflectionTestUtils.invokeMethod(manager, "findShadowUnsafeChange", alterTableParam, snapshot()));
+		alterTableParam.getAddIndexes().add(index("uk_name", true, "name"));
+		assertEquals("要增加唯一索引uk_name", ReflectionTestUtils.invokeMethod(manager, "findShadowUnsafeChange", alterTableParam, snapshot()));
+	}
+
+	@Test
+	public void uniqueIndexOnDuplicateDataIsRejected(){
+		final List<List<String>> checkedColumns = new ArrayList<List<String>>();
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", duplicateCountMapper(3, checkedColumns));
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getAddIndexes().add(index("idx_name", false, "name"));
+		// 新增的字段表中还没有数据，不检查
+		alterTableParam.getAddIndexes().add(index("uk_nick", true, "nick"));
+		alterTableParam.getAddIndexes().add(index("uk_name", true, "name"));
+		try{
+			ReflectionTestUtils.invokeMethod(manager, "checkUniqueDuplicates", alterTableParam, snapshot());
+			fail();
+		}catch (RuntimeException e){
+			assertEquals("表user的字段[name]有3组重复的值，不能增加唯一索引uk_name，请先清理重复的数据", e.getMessage());
+		}
+		assertEquals(Arrays.asList(Arrays.asList("name")), checkedColumns);
+	}
+
+	@Test
+	public void uniqueIndexWithoutDuplicatesPasses(){
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", duplicateCountMapper(0, new ArrayList<List<String>>()));
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getAddIndexes().add(index("uk_name", true, "name"));
+		ReflectionTestUtils.invokeMethod(manager, "checkUniqueDuplicates", alterTableParam, snapshot());
+	}
+
+	@Test
+	public void failedAlterIsThrownWithoutPerFieldRetry(){
+		List<String> algorithms = new ArrayList<String>();
+		RuntimeException failure = new RuntimeException("Duplicate column name 'nick'");
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms, failure));
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		alterTableParam.getAddFields().add(varchar("nick", 50));
+		alterTableParam.getRemoveFields().add("name");
+		try{
+			ReflectionTestUtils.invokeMethod(manager, "alterTableByParam", alterTableParam, snapshot());
+			fail();
+		}catch (RuntimeException e){
+			assertEquals(failure, e);
+		}
+		assertEquals(Arrays.asList((String) null), algorithms);
+	}
+
+	@Test
+	public void recognizesWrappedAlterNotSupportedErrors(){
+		assertTrue(isAlterNotSupported(new RuntimeException(new SQLException("ALGORITHM=INSTANT is not supported", "0A000", 1845))));
+		assertTrue(isAlterNotSupported(new RuntimeException(new RuntimeException(new SQLException("LOCK=NONE is not supported", "0A000", 1846)))));
+		assertFalse(isAlterNotSupported(new RuntimeException(new SQLException("Duplicate entry", "23000", 1062))));
+		assertFalse(isAlterNotSupported(new RuntimeException("not a sql error")));
+	}
+
+	@Test
+	public void onlineAlterStepsFromInstantToInplace(){
+		List<String> algorithms = new ArrayList<String>();
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms, notSupported()));
+		ReflectionTestUtils.setField(manager, "mysqlVersion", "8.0.30");
+		AlterTableParam alterTableParam = new AlterTableParam("user");
+		assertTrue((Boolean) ReflectionTestUtils.invokeMethod(manager, "onlineAlterTable", alterTableParam));
+		assertEquals(Arrays.asList(MySqlAlterAlgorithmConstant.INSTANT, MySqlAlterAlgorithmConstant.INPLACE), algorithms);
+		assertNull(alterTableParam.getAlgorithm());
+		assertNull(alterTableParam.getLock());
+	}
+
+	@Test
+	public void onlineAlterSkipsInstantBefore8012(){
+		List<String> algorithms = new ArrayList<String>();
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms));
+		ReflectionTestUtils.setField(manager, "mysqlVersion", "8.0.11");
+		assertTrue((Boolean) ReflectionTestUtils.invokeMethod(manager, "onlineAlterTable", new AlterTableParam("user")));
+		assertEquals(Arrays.asList(MySqlAlterAlgorithmConstant.INPLACE), algorithms);
+	}
+
+	@Test
+	public void onlineAlterThrowsOtherErrorsWithoutNextAlgorithm(){
+		List<String> algorithms = new ArrayList<String>();
+		RuntimeException failure = new RuntimeException(new SQLException("Lock wait timeout exceeded", "HY000", 1205));
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms, failure));
+		ReflectionTestUtils.setField(manager, "mysqlVersion", "8.0.30");
+		try{
+			ReflectionTestUtils.invokeMethod(manager, "onlineAlterTable", new AlterTableParam("user"));
+			fail();
+		}catch (RuntimeException e){
+			assertEquals(failure, e);
+		}
+		assertEquals(Arrays.asList(MySqlAlterAlgorithmConstant.INSTANT), algorithms);
+	}
+
+	@Test
+	public void onlineDdlFallsBackToDefaultAlgorithmOnlyWhenConfigured(){
+		List<String> algorithms = new ArrayList<String>();
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms, notSupported(), notSupported()));
+		ReflectionTestUtils.setField(manager, "mysqlVersion", "8.0.30");
+		ReflectionTestUtils.setField(manager, "onlineDdl", "true");
+		ReflectionTestUtils.setField(manager, "onlineDdlFallback", "true");
+		ReflectionTestUtils.invokeMethod(manager, "alterTableByParam", new AlterTableParam("user"), snapshot());
+		assertEquals(Arrays.asList(MySqlAlterAlgorithmConstant.INSTANT, MySqlAlterAlgorithmConstant.INPLACE, null), algorithms);
+
+		algorithms.clear();
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", alterTableMapper(algorithms, notSupported(), notSupported()));
+		ReflectionTestUtils.setField(manager, "onlineDdlFallback", null);
+		try{
+			ReflectionTestUtils.invokeMethod(manager, "alterTableByParam", new AlterTableParam("user"), snapshot());
+			fail();
+		}catch (RuntimeException e){
+			assertTrue(e.getMessage().startsWith("表user不支持online ddl"));
+		}
+		assertEquals(Arrays.asList(MySqlAlterAlgorithmConstant.INSTANT, MySqlAlterAlgorithmConstant.INPLACE), algorithms);
+	}
+
+	@Test
+	public void tableThreadsAreCappedByMaxActive(){
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setMaxActive(2);
+		ReflectionTestUtils.setField(manager, "dataSource", dataSource);
+		assertEquals(2, tableThreads("8"));
+		assertEquals(2, tableThreads(" 2 "));
+		assertEquals(1, tableThreads(null));
+		assertEquals(1, tableThreads("0"));
+		assertEquals(1, tableThreads("abc"));
+
+		// maxActive小于等于0时不限制
+		dataSource.setMaxActive(-1);
+		assertEquals(8, tableThreads("8"));
+	}
+
+	@Test
+	public void parallelAlterRunsEveryTableAndReportsFailures(){
+		RuntimeException failure = new RuntimeException("Lock wait timeout exceeded");
+		TableMapperHandler handler = new TableMapperHandler(Collections.singletonMap("b", failure));
+		ReflectionTestUtils.setField(manager, "createMysqlTablesMapper", handler.newMapper());
+		List<AlterTableParam> alterTableParams = new ArrayList<AlterTableParam>();
+		for (String tableName : Arrays.asList("a", "b", "c", "d", "e")){
+			AlterTableParam alterTableParam = new AlterTableParam(tableName);
+			alterTableParam.getRemoveFields().add("name");
+			alterTableParams.add(alterTableParam);
+		}
+		try{
+			ReflectionTestUtils.invokeMethod(manager, "parallelCreateOrModifyTable", 2, snapshot(), new HashMap<String, List<Object>>(),
+					new HashMap<String, List<Object>>(), alterTableParams);
+			fail();
+		}catch (RuntimeException e){
+			assertEquals("创建或修改表失败：[b]", e.getMessage());
+			assertEquals(failure, e.getCause());
+		}
+		// b失败不影响其他表，同时执行的表不超过线程数
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d", "e")), new HashSet<String>(handler.alteredTables));
+		assertTrue(handler.maxRunning <= 2);
+	}
+
+	private int versionNumber(String version){
+		ReflectionTestUtils.setField(manager, "mysqlVersion", version);
+		return (Integer) ReflectionTestUtils.invokeMethod(manager, "getMysqlVersionNumber");
+	}
+
+	private boolean isAlterNotSupported(Throwable e){
+		return (Boolean) ReflectionTestUtils.invokeMethod(manager, "isAlterNotSupported", e);
+	}
+
+	private static RuntimeException notSupported(){
+		return new RuntimeException(new SQLException("ALGORITHM is not supported", "0A000", MySqlAlterAlgorithmConstant.ER_ALTER_OPERATION_NOT_SUPPORTED));
+	}
+
+	private int tableThreads(String tableThreads){
+		ReflectionTestUtils.setField(manager, "tableThreads", tableThreads);
+		return (Integer) ReflectionTestUtils.invokeMethod(manager, "getTableThreads");
+	}
+
+	private String estimate(String version,AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot){
+		return estimate(version, alterTableParam, snapshot, new ArrayList<String>());
+	}
+
+	private String estimate(String version,AlterTableParam alterTableParam,SysMysqlSchemaSnapshot snapshot,List<String> changeList){
+		ReflectionTestUtils.setField(manager, "mysqlVersion", version);
+		return ReflectionTestUtils.invokeMethod(manager, "estimateAlgorithm", alterTableParam, snapshot, changeList);
+	}
+
+	/**
+	 * user表：id int(11)主键自增，name varchar(50)可以为null
+	 */
+	private static SysMysqlSchemaSnapshot snapshot(){
+		SysMysqlTables table = new SysMysqlTables();
+		table.setTable_name("user");
+		SysMysqlColumns id = new SysMysqlColumns();
+		id.setTable_name("user");
+		id.setColumn_name("id");
+		id.setData_type("int");
+		id.setColumn_type("int(11)");
+		id.setIs_nullable("NO");
+		id.setColumn_key("PRI");
+		id.setExtra("auto_increment");
+		SysMysqlColumns name = new SysMysqlColumns();
+		name.setTable_name("user");
+		name.setColumn_name("name");
+		name.setData_type("varchar");
+		name.setColumn_type("varchar(50)");
+		name.setCharacter_maximum_length("50");
+		name.setIs_nullable("YES");
+		name.setColumn_key("");
+		name.setExtra("");
+		return new SysMysqlSchemaSnapshot(Arrays.asList(table), Arrays.asList(id, name), new ArrayList<SysMysqlStatistics>());
+	}
+
+	private static CreateTableParam varchar(String name,int length){
+		CreateTableParam param = new CreateTableParam();
+		param.setFieldName(name);
+		param.setFieldType("varchar");
+		param.setFieldLength(length);
+		param.setFieldIsNull(true);
+		param.setFieldDefaultValue("NULL");
+		param.setFileTypeLength(1);
+		return param;
+	}
+
+	private boolean isSameIndex(CreateIndexParam createIndexParam,CreateIndexParam sysIndex){
+		return (Boolean) ReflectionTestUtils.invokeMethod(manager, "isSameIndex", createIndexParam, sysIndex);
+	}
+
+	private static void assertIndex(Object obj,String name,boolean unique,String...columns){
+		CreateIndexParam index = (CreateIndexParam) obj;
+		assertEquals(name, index.getIndexName());
+		assertEquals(unique, index.isIndexIsUnique());
+		assertEquals(Arrays.asList(columns), index.getIndexColumns());
+	}
+
+	private static CreateIndexParam index(String name,boolean unique,String...columns){
+		CreateIndexParam index = new CreateIndexParam();
+		index.setIndexName(name);
+		index.setIndexIsUnique(unique);
+		index.getIndexColumns().addAll(Arrays.asList(columns));
+		return index;
+	}
+
+	private static SysMysqlStatistics statistic(String indexName,int nonUnique,int seq,String columnName){
+		SysMysqlStatistics statistic = new SysMysqlStatistics();
+		statistic.setTable_name("book");
+		statistic.setIndex_name(indexName);
+		statistic.setNon_unique(nonUnique);
+		statistic.setSeq_in_index(seq);
+		statistic.setColumn_name(columnName);
+		return statistic;
+	}
+
+	/**
+	 * findDuplicateCount返回固定的组数，并记录检查过的字段，其他方法不应该被调用
+	 */
+	private static CreateMysqlTablesMapper duplicateCountMapper(final long duplicateCount,final List<List<String>> checkedColumns){
+		return (CreateMysqlTablesMapper) Proxy.newProxyInstance(
+				CreateMysqlTablesMapper.class.getClassLoader(),
+				new Class<?>[] { CreateMysqlTablesMapper.class },
+				new InvocationHandler(){
+
+					@SuppressWarnings("unchecked")
+					public Object invoke(Object proxy,Method method,Object[] args){
+						if (!"findDuplicateCount".equals(method.getName())) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						checkedColumns.add((List<String>) args[1]);
+						return duplicateCount;
+					}
+				});
+	}
+
+	/**
+	 * alterTable依次抛出failures中的异常，failures用完后执行成功，记录每次调用时的ALGORITHM，其他方法不应该被调用
+	 */
+	private static CreateMysqlTablesMapper alterTableMapper(final List<String> algorithms,final RuntimeException...failures){
+		return (CreateMysqlTablesMapper) Proxy.newProxyInstance(
+				CreateMysqlTablesMapper.class.getClassLoader(),
+				new Class<?>[] { CreateMysqlTablesMapper.class },
+				new InvocationHandler(){
+
+					public Object invoke(Object proxy,Method method,Object[] args){
+						if (!"alterTable".equals(method.getName())) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						algorithms.add(((AlterTableParam) args[0]).getAlgorithm());
+						if (algorithms.size() <= failures.length) {
+							throw failures[algorithms.size() - 1];
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * 只支持alterTable，按表名抛出指定的异常，记录执行过的表和同时执行的最大数量，可以被多个线程同时调用
+	 */
+	private static class TableMapperHandler implements InvocationHandler{
+
+		private final Map<String, RuntimeException>	failures;
+
+		private final List<String>					alteredTables	= Collections.synchronizedList(new ArrayList<String>());
+
+		private final AtomicInteger					running			= new AtomicInteger();
+
+		private int									maxRunning;
+
+		TableMapperHandler(Map<String, RuntimeException> failures){
+			this.failures = failures;
+		}
+
+		CreateMysqlTablesMapper newMapper(){
+			return (CreateMysqlTablesMapper) Proxy.newProxyInstance(CreateMysqlTablesMapper.class.getClassLoader(),
+					new Class<?>[] { CreateMysqlTablesMapper.class }, this);
+		}
+
+		public Object invoke(Object proxy,Method method,Object[] args) throws InterruptedException{
+			if (!"alterTable".equals(method.getName())) {
+				throw new UnsupportedOperationException(method.getName());
+			}
+			String tableName = ((AlterTableParam) args[0]).getTableName();
+			int current = running.incrementAndGet();
+			try{
+				synchronized (this){
+					maxRunning = Math.max(maxRunning, current);
+				}
+				alteredTables.add(tableName);
+				Thread.sleep(20);
+				RuntimeException failure = failures.get(tableName);
+				if (failure != null) {
+					throw failure;
+				}
+				return null;
+			}finally{
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Table(name = "book",indexes = @Index(columns = { "author", "title" }),uniques = @Unique(columns = "isbn"))
+	public static class Book{
+
+		@Column(name = "id",type = MySqlTypeConstant.BIGINT,isNull = false,isKey = true,isAutoIncrement = true)
+		private Long	id;
+
+		@Index
+		@Column(name = "title",type = MySqlTypeConstant.VARCHAR,length = 100)
+		private String	title;
+
+		@Column(name = "author",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	author;
+
+		@Column(name = "isbn",type = MySqlTypeConstant.VARCHAR,length = 20)
+		private String	isbn;
+
+		@Unique
+		@Column(name = "code",type = MySqlTypeConstant.VARCHAR,length = 20)
+		private String	code;
+	}
+}
@@ -0,0 +1,61 @@
+package com.sunchenbin.store.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundSqlToolsTest{
+
+	private static final String	MAPPER	= "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">"
+			+ "<mapper namespace=\"test\">"
+			+ "<select id=\"find\" parameterType=\"java.util.Map\">"
+			+ "select * from `${tableName}`\n  where name = #{name}\n  and code = #{code} and age = #{age}"
+			+ "<if test=\"ids != null\"> and id in <foreach collection=\"ids\" item=\"id\" open=\"(\" separator=\",\" close=\")\">#{id}</foreach></if>"
+			+ "</select>"
+			+ "<select id=\"count\">select count(1) from t</select>"
+			+ "</mapper>";
+
+	private Configuration		configuration;
+
+	@Before
+	public void setUp() throws Exception{
+		configuration = new Configuration();
+		new XMLMapperBuilder(new ByteArrayInputStream(MAPPER.getBytes("UTF-8")), configuration, "test.xml", configuration.getSqlFragments()).parse();
+	}
+
+	@Test
+	public void replacesPlaceholdersWithLiterals(){
+		Map<String, Object> param = new HashMap<String, Object>();
+		param.put("tableName", "user");
+		param.put("name", "it's");
+		param.put("code", null);
+		param.put("age", 18);
+		assertEquals("select * from `user` where name = 'it''s' and code = NULL and age = 18", BoundSqlTools.render(configuration, "test.find", param));
+	}
+
+	@Test
+	public void rendersForeachParameters(){
+		Map<String, Object> param = new HashMap<String, Object>();
+		param.put("tableName", "user");
+		param.put("name", "a\\b");
+		param.put("code", Boolean.TRUE);
+		param.put("age", 1L);
+		param.put("ids", Arrays.asList(1, 2));
+		assertEquals("select * from `user` where name = 'a\\\\b' and code = true and age = 1 and id in ( 1 , 2 )",
+				BoundSqlTools.render(configuration, "test.find", param));
+	}
+
+	@Test
+	public void rendersStatementWithoutParameter(){
+		assertEquals("select count(1) from t", BoundSqlTools.render(configuration, "test.count", null));
+	}
+}
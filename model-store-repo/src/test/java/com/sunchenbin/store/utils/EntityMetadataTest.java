@@ -0,0 +1,124 @@
+package com.sunchenbin.store.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+
+public class EntityMetadataTest{
+
+	@Test
+	public void flattensHierarchySubclassFirst(){
+		EntityMetadata metadata = EntityMetadata.forClass(Article.class);
+		assertEquals("article", metadata.getTableName());
+		assertEquals(Arrays.asList("title", "name", "id", "create_time"), names(metadata.getColumns()));
+	}
+
+	@Test
+	public void subclassColumnOverridesParent(){
+		EntityColumn name = EntityMetadata.forClass(Article.class).getColumn("name");
+		assertSame(Article.class, name.getField().getDeclaringClass());
+		assertEquals(100, name.getColumn().length());
+		assertEquals(50, EntityMetadata.forClass(Record.class).getColumn("name").getColumn().length());
+	}
+
+	@Test
+	public void keyAndAutoIncrementColumnsComeFromParent(){
+		EntityMetadata metadata = EntityMetadata.forClass(Article.class);
+		assertEquals(Arrays.asList("id"), names(metadata.getKeyColumns()));
+		assertEquals(Arrays.asList("id"), names(metadata.getAutoIncrementColumns()));
+	}
+
+	@Test
+	public void readsAndWritesInheritedFields() throws Exception{
+		EntityMetadata metadata = EntityMetadata.forClass(Article.class);
+		Article article = (Article) metadata.newInstance();
+		metadata.getColumn("id").setValue(article, 7L);
+		metadata.getColumn("name").setValue(article, "sub");
+		metadata.getColumn("title").setValue(article, "t");
+		assertEquals(Long.valueOf(7), article.getId());
+		assertEquals("sub", article.getName());
+		// 父类中被覆盖的字段不会被写入
+		Field parentName = Record.class.getDeclaredField("name");
+		parentName.setAccessible(true);
+		assertNull(parentName.get(article));
+		assertEquals("t", metadata.getColumn("title").getValue(article));
+	}
+
+	@Test
+	public void inheritsTableAndCachesMetadata(){
+		EntityMetadata metadata = EntityMetadata.forClass(DraftArticle.class);
+		assertEquals("article", metadata.getTableName());
+		assertEquals(names(EntityMetadata.forClass(Article.class).getColumns()), names(metadata.getColumns()));
+		assertSame(metadata, EntityMetadata.forClass(DraftArticle.class));
+		assertNull(EntityMetadata.forClass(String.class));
+	}
+
+	private static List<String> names(List<EntityColumn> columns){
+		List<String> names = new ArrayList<String>();
+		for (EntityColumn column : columns){
+			names.add(column.getName());
+		}
+		return names;
+	}
+
+	@Table(name = "record")
+	public static class Record{
+
+		@Column(name = "id",type = MySqlTypeConstant.BIGINT,isNull = false,isKey = true,isAutoIncrement = true)
+		private Long	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		@Column(name = "create_time",type = MySqlTypeConstant.DATETIME,length = 0)
+		private java.util.Date	create_time;
+
+		public Long getId(){
+			return id;
+		}
+
+		public void setId(Long id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+	}
+
+	@Table(name = "article")
+	public static class Article extends Record{
+
+		@Column(name = "title",type = MySqlTypeConstant.VARCHAR,length = 200)
+		private String	title;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 100)
+		private String	name;
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+	}
+
+	public static class DraftArticle extends Article{
+	}
+}
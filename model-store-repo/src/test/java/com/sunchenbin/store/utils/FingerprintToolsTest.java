@@ -0,0 +1,111 @@
+package com.sunchenbin.store.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sunchenbin.store.command.CreateIndexParam;
+import com.sunchenbin.store.command.CreateTableParam;
+import com.sunchenbin.store.command.SysMysqlColumns;
+import com.sunchenbin.store.command.SysMysqlStatistics;
+
+public class FingerprintToolsTest{
+
+	@Test
+	public void md5IsLowerCaseHex(){
+		assertEquals("d41d8cd98f00b204e9800998ecf8427e", FingerprintTools.md5(""));
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", FingerprintTools.md5("abc"));
+	}
+
+	@Test
+	public void modelFingerprintIsStable(){
+		String first = FingerprintTools.modelFingerprint(fields(field("id", 11), field("name", 50)), indexes(index("idx_name", false, "name")));
+		String second = FingerprintTools.modelFingerprint(fields(field("id", 11), field("name", 50)), indexes(index("idx_name", false, "name")));
+		assertEquals(first, second);
+		assertEquals(32, first.length());
+	}
+
+	@Test
+	public void modelFingerprintChangesWithFields(){
+		String base = FingerprintTools.modelFingerprint(fields(field("id", 11), field("name", 50)), indexes());
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fields(field("id", 11), field("name", 100)), indexes())));
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fields(field("name", 50), field("id", 11)), indexes())));
+
+		CreateTableParam nullable = field("name", 50);
+		nullable.setFieldIsNull(false);
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fields(field("id", 11), nullable), indexes())));
+	}
+
+	@Test
+	public void modelFingerprintChangesWithIndexes(){
+		List<Object> fieldList = fields(field("id", 11), field("name", 50), field("code", 20));
+		String base = FingerprintTools.modelFingerprint(fieldList, indexes(index("idx_name", false, "name")));
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fieldList, indexes())));
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fieldList, indexes(index("idx_name", true, "name")))));
+		assertFalse(base.equals(FingerprintTools.modelFingerprint(fieldList, indexes(index("idx_name", false, "name", "code")))));
+	}
+
+	@Test
+	public void tableFingerprintChangesWithColumnsAndStatistics(){
+		List<SysMysqlColumns> columns = Arrays.asList(column("id", "int(11)", "NO"), column("name", "varchar(50)", "YES"));
+		List<SysMysqlStatistics> statistics = Arrays.asList(statistic("idx_name", 1, "name"));
+		String base = FingerprintTools.tableFingerprint(columns, statistics);
+		assertEquals(base, FingerprintTools.tableFingerprint(
+				Arrays.asList(column("id", "int(11)", "NO"), column("name", "varchar(50)", "YES")),
+				Arrays.asList(statistic("idx_name", 1, "name"))));
+		assertFalse(base.equals(FingerprintTools.tableFingerprint(
+				Arrays.asList(column("id", "int(11)", "NO"), column("name", "varchar(100)", "YES")),
+				statistics)));
+		assertFalse(base.equals(FingerprintTools.tableFingerprint(columns, Arrays.asList(statistic("idx_name", 0, "name")))));
+		assertFalse(base.equals(FingerprintTools.tableFingerprint(columns, new ArrayList<SysMysqlStatistics>())));
+	}
+
+	private static CreateTableParam field(String name,int length){
+		CreateTableParam param = new CreateTableParam();
+		param.setFieldName(name);
+		param.setFieldType("varchar");
+		param.setFieldLength(length);
+		param.setFieldIsNull(true);
+		param.setFieldDefaultValue("NULL");
+		param.setFileTypeLength(1);
+		return param;
+	}
+
+	private static CreateIndexParam index(String name,boolean unique,String...columns){
+		CreateIndexParam param = new CreateIndexParam();
+		param.setIndexName(name);
+		param.setIndexIsUnique(unique);
+		param.getIndexColumns().addAll(Arrays.asList(columns));
+		return param;
+	}
+
+	private static SysMysqlColumns column(String name,String type,String nullable){
+		SysMysqlColumns column = new SysMysqlColumns();
+		column.setColumn_name(name);
+		column.setColumn_type(type);
+		column.setIs_nullable(nullable);
+		return column;
+	}
+
+	private static SysMysqlStatistics statistic(String indexName,int nonUnique,String columnName){
+		SysMysqlStatistics statistic = new SysMysqlStatistics();
+		statistic.setIndex_name(indexName);
+		statistic.setNon_unique(nonUnique);
+		statistic.setSeq_in_index(1);
+		statistic.setColumn_name(columnName);
+		return statistic;
+	}
+
+	private static List<Object> fields(Object...params){
+		return new ArrayList<Object>(Arrays.asList(params));
+	}
+
+	private static List<Object> indexes(Object...params){
+		return new ArrayList<Object>(Arrays.asList(params));
+	}
+}
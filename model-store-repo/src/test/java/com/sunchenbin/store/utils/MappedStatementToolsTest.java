@@ -0,0 +1,172 @@
+package com.sunchenbin.store.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sunchenbin.store.annotation.Column;
+import com.sunchenbin.store.annotation.Table;
+import com.sunchenbin.store.command.EntityRowParam;
+import com.sunchenbin.store.constants.MySqlTypeConstant;
+
+public class MappedStatementToolsTest{
+
+	private static final String	NAMESPACE	= "com.sunchenbin.store.dao.common.BaseMysqlCRUDMapper";
+
+	private Configuration		configuration;
+
+	private EntityMetadata		metadata;
+
+	@Before
+	public void setUp() throws Exception{
+		configuration = new Configuration();
+		String resource = "com/sunchenbin/store/mapping/common/BaseMysqlCRUDMapper.xml";
+		InputStream inputStream = Resources.getResourceAsStream(resource);
+		try{
+			new XMLMapperBuilder(inputStream, configuration, resource, configuration.getSqlFragments()).parse();
+		}finally{
+			inputStream.close();
+		}
+		metadata = EntityMetadata.forClass(User.class);
+	}
+
+	@Test
+	public void insertUsesOnlyGivenColumns(){
+		String id = MappedStatementTools.getInsertStatementId(configuration, NAMESPACE, metadata);
+		EntityRowParam row = row(columns("name"), columns());
+		BoundSql boundSql = configuration.getMappedStatement(id).getBoundSql(row);
+		assertEquals("insert into `user`(`name`) values(?)", boundSql.getSql());
+		assertEquals(Arrays.asList("values[0]"), properties(boundSql));
+
+		row = row(columns("name", "age"), columns());
+		boundSql = configuration.getMappedStatement(id).getBoundSql(row);
+		assertEquals("insert into `user`(`name`,`age`) values(?,?)", boundSql.getSql());
+		assertEquals(Arrays.asList("values[0]", "values[1]"), properties(boundSql));
+		assertTrue(configuration.getMappedStatement(id).getKeyGenerator() instanceof Jdbc3KeyGenerator);
+	}
+
+	@Test
+	public void updateSetsValuesAndFiltersByKeyValues(){
+		String id = MappedStatementTools.getUpdateStatementId(configuration, NAMESPACE, metadata);
+		BoundSql boundSql = configuration.getMappedStatement(id).getBoundSql(row(columns("name", "age"), columns("id")));
+		assertEquals("update `user` set `name` = ?,`age` = ? where `id` = ?", boundSql.getSql());
+		assertEquals(Arrays.asList("values[0]", "values[1]", "keyValues[0]"), properties(boundSql));
+		assertTrue(configuration.getMappedStatement(id).getKeyGenerator() instanceof NoKeyGenerator);
+	}
+
+	@Test
+	public void deleteAndSelectFilterByValues(){
+		String deleteId = MappedStatementTools.getDeleteStatementId(configuration, NAMESPACE, metadata);
+		BoundSql boundSql = configuration.getMappedStatement(deleteId).getBoundSql(row(columns(), columns("name", "age")));
+		assertEquals("delete from `user` where `name` = ? and `age` = ?", boundSql.getSql());
+		assertEquals(Arrays.asList("values[0]", "values[1]"), properties(boundSql));
+
+		String selectId = MappedStatementTools.getSelectStatementId(configuration, NAMESPACE, metadata);
+		MappedStatement statement = configuration.getMappedStatement(selectId);
+		assertEquals("select * from `user` where `id` = ?", statement.getBoundSql(row(columns(), columns("id"))).getSql());
+		assertEquals("select * from `user`", statement.getBoundSql(row(columns(), columns())).getSql());
+		assertSame(User.class, statement.getResultMaps().get(0).getType());
+	}
+
+	@Test
+	public void registersOneStatementPerEntityAndOperation(){
+		String id = MappedStatementTools.getInsertStatementId(configuration, NAMESPACE, metadata);
+		int count = configuration.getMappedStatementNames().size();
+		MappedStatement statement = configuration.getMappedStatement(id);
+		statement.getBoundSql(row(columns("name"), columns()));
+		statement.getBoundSql(row(columns("age"), columns()));
+		statement.getBoundSql(row(columns("name", "age"), columns()));
+		assertEquals(id, MappedStatementTools.getInsertStatementId(configuration, NAMESPACE, metadata));
+		assertEquals(count, configuration.getMappedStatementNames().size());
+	}
+
+	@Test
+	public void entityStatementCopiesTemplateWithEntityResultMap(){
+		String templateId = NAMESPACE + ".queryStream";
+		String id = MappedStatementTools.getEntityStatementId(configuration, templateId, metadata);
+		assertEquals(id, MappedStatementTools.getEntityStatementId(configuration, templateId, metadata));
+		MappedStatement template = configuration.getMappedStatement(templateId);
+		MappedStatement statement = configuration.getMappedStatement(id);
+		assertSame(template.getSqlSource(), statement.getSqlSource());
+		assertEquals(template.getFetchSize(), statement.getFetchSize());
+		assertEquals(template.getResultSetType(), statement.getResultSetType());
+		assertSame(User.class, statement.getResultMaps().get(0).getType());
+		assertEquals(3, statement.getResultMaps().get(0).getResultMappings().size());
+	}
+
+	private EntityRowParam row(List<EntityColumn> columns,List<EntityColumn> whereColumns){
+		EntityRowParam row = new EntityRowParam();
+		row.setColumns(columns);
+		row.setWhereColumns(whereColumns);
+		return row;
+	}
+
+	private List<EntityColumn> columns(String...names){
+		List<EntityColumn> columns = new ArrayList<EntityColumn>();
+		for (String name : names){
+			columns.add(metadata.getColumn(name));
+		}
+		return columns;
+	}
+
+	private static List<String> properties(BoundSql boundSql){
+		List<String> properties = new ArrayList<String>();
+		for (ParameterMapping parameterMapping : boundSql.getParameterMappings()){
+			properties.add(parameterMapping.getProperty());
+		}
+		return properties;
+	}
+
+	@Table(name = "user")
+	public static class User{
+
+		@Column(name = "id",type = MySqlTypeConstant.INT,length = 11,isNull = false,isKey = true,isAutoIncrement = true)
+		private Integer	id;
+
+		@Column(name = "name",type = MySqlTypeConstant.VARCHAR,length = 50)
+		private String	name;
+
+		@Column(name = "age",type = MySqlTypeConstant.INT,length = 11)
+		private Integer	age;
+
+		public Integer getId(){
+			return id;
+		}
+
+		public void setId(Integer id){
+			this.id = id;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public void setName(String name){
+			this.name = name;
+		}
+
+		public Integer getAge(){
+			return age;
+		}
+
+		public void setAge(Integer age){
+			this.age = age;
+		}
+	}
+}